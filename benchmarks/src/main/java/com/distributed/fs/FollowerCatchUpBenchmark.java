@@ -0,0 +1,126 @@
+package com.distributed.fs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Time for a far-behind follower to catch up with a freshly elected leader, over real HTTP on
+// localhost. Two nodes start with `lag` entries already in their WAL and elect a leader, so that
+// leader's nextIndex for the third node begins at the end of its log. The op starts the third
+// node and waits until it has applied everything. With divergent=true the third node also holds
+// lag/2 uncommitted entries from an older term that must be found and overwritten.
+//
+// Without conflict hints the leader walks nextIndex back one entry per round trip; with them it
+// needs one or two rejections, so the time should be dominated by shipping the entries.
+// compressMinBytes=0 sends them as is; otherwise AppendEntries bodies from that size up go out
+// deflated, and each iteration prints how many bytes the leader put on the wire.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FollowerCatchUpBenchmark {
+
+    @Param({"1000", "10000"})
+    public int lag;
+
+    @Param({"false", "true"})
+    public boolean divergent;
+
+    @Param({"0", "16384"})
+    public int compressMinBytes;
+
+    private static final int[] PORTS = {18101, 18102, 18103};
+
+    private Path dir;
+    private RaftOptions options;
+    private final List<RaftNode> running = new ArrayList<>();
+    private RaftNode laggard;
+    private RaftClient leaderClient;
+    private long wireBytesBefore;
+    private long bodyBytesBefore;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("catchup-bench");
+        options = new RaftOptions();
+        options.dataDir = dir.toString();
+        options.rpcCodec = "binary";
+        options.snapshotThreshold = Integer.MAX_VALUE; // catch up from the log, not a snapshot
+        options.rpcCompressMinBytes = compressMinBytes;
+
+        // nodes 0 and 1 already agree on `lag` entries from term 2; node 2 has nothing, or a
+        // divergent tail from term 1 that never committed
+        List<LogEntry> committed = new ArrayList<>(lag);
+        for (int i = 1; i <= lag; i++) committed.add(new LogEntry(2, "PUT /files/f" + i + " v" + i));
+        seed(PORTS[0], 2, committed);
+        seed(PORTS[1], 2, committed);
+        List<LogEntry> stale = new ArrayList<>();
+        if (divergent) {
+            for (int i = 1; i <= lag / 2; i++) stale.add(new LogEntry(1, "PUT /files/f" + i + " stale"));
+        }
+        seed(PORTS[2], 1, stale);
+
+        for (int i = 0; i < 2; i++) {
+            RaftNode node = new RaftNode(id(PORTS[i]), peersOf(PORTS[i]), PORTS[i], options);
+            node.start();
+            running.add(node);
+        }
+        // wait until a leader has committed its no-op, i.e. everything seeded is committed
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (running.stream().noneMatch(n -> n.isLeader() && n.commitIndex() > lag)) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("no leader elected");
+            Thread.sleep(10);
+        }
+        laggard = new RaftNode(id(PORTS[2]), peersOf(PORTS[2]), PORTS[2], options);
+        leaderClient = (RaftClient) running.stream().filter(RaftNode::isLeader).findFirst().orElseThrow().transport();
+        wireBytesBefore = leaderClient.wireBytes();
+        bodyBytesBefore = leaderClient.bodyBytes();
+    }
+
+    @Benchmark
+    public int catchUp() throws Exception {
+        laggard.start();
+        running.add(laggard);
+        while (laggard.lastApplied() <= lag) Thread.sleep(1);
+        return laggard.lastApplied();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        System.out.printf("leader sent %.1f MB of request bodies as %.1f MB on the wire%n",
+                (leaderClient.bodyBytes() - bodyBytesBefore) / 1e6, (leaderClient.wireBytes() - wireBytesBefore) / 1e6);
+        for (RaftNode node : running) node.stop();
+        running.clear();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private void seed(int port, int term, List<LogEntry> entries) throws IOException {
+        Path nodeDir = dir.resolve(id(port).replace(':', '_'));
+        try (WriteAheadLog wal = new WriteAheadLog(nodeDir, options.walSegmentBytes, false)) {
+            wal.load();
+            wal.saveHardState(term, null);
+            if (!entries.isEmpty()) wal.sync(wal.append(entries, 1));
+        }
+    }
+
+    private static String id(int port) {
+        return "localhost:" + port;
+    }
+
+    private static List<String> peersOf(int port) {
+        List<String> peers = new ArrayList<>();
+        for (int p : PORTS) if (p != port) peers.add(id(p));
+        return peers;
+    }
+}
@@ -0,0 +1,172 @@
+package com.distributed.fs;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Heartbeat jitter under load, with the platform thread pools vs. virtual threads. Three real
+// nodes plus `slowPeers` fake members that take 2s to answer anything (so every RPC to them
+// times out), all over real HTTP on localhost. `clients` threads keep sending puts spread over
+// the three nodes: the leader's share each hold a request-handling thread until applied, the
+// followers' share come straight back NOT_LEADER and keep their HTTP servers busy.
+//
+// Each op waits for the next leader contact (heartbeat or AppendEntries) to arrive at one
+// follower, so in SampleTime mode the op time is the gap between two contacts and the
+// percentiles are the jitter; anything near the 300ms election timeout is a spurious election
+// waiting to happen. Elections that did happen are printed at tear-down.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class HeartbeatJitterBenchmark {
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"0", "2"})
+    public int slowPeers;
+
+    @Param({"64"})
+    public int clients;
+
+    private static final int[] PORTS = {18201, 18202, 18203};
+    private static final int SLOW_PORT_BASE = 18211;
+    private static final long SLOW_REPLY_MS = 2000;
+
+    private Path dir;
+    private final List<RaftNode> nodes = new ArrayList<>();
+    private final List<HttpServer> slow = new ArrayList<>();
+    private final List<Thread> load = new ArrayList<>();
+    private final AtomicLong puts = new AtomicLong();
+    private volatile boolean running;
+    private RaftNode follower;
+    private int startTerm;
+    private long lastContact;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("jitter-bench");
+        RaftOptions options = new RaftOptions();
+        options.dataDir = dir.toString();
+        options.rpcCodec = "binary";
+        options.virtualThreads = virtualThreads;
+
+        List<String> members = new ArrayList<>();
+        for (int p : PORTS) members.add(id(p));
+        for (int i = 0; i < slowPeers; i++) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(SLOW_PORT_BASE + i), 0);
+            server.createContext("/", exchange -> {
+                try {
+                    Thread.sleep(SLOW_REPLY_MS);
+                } catch (InterruptedException ignored) {
+                }
+                exchange.getRequestBody().transferTo(java.io.OutputStream.nullOutputStream());
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            });
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+            slow.add(server);
+            members.add(id(SLOW_PORT_BASE + i));
+        }
+        for (int p : PORTS) {
+            List<String> peers = new ArrayList<>(members);
+            peers.remove(id(p));
+            RaftNode node = new RaftNode(id(p), peers, p, options);
+            node.start();
+            nodes.add(node);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (nodes.stream().noneMatch(n -> n.isLeader() && n.commitIndex() > 0)) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("no leader elected");
+            Thread.sleep(10);
+        }
+        follower = nodes.stream().filter(n -> !n.isLeader()).findFirst().orElseThrow();
+        startTerm = follower.currentTerm();
+
+        running = true;
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            Thread t = new Thread(() -> {
+                long i = 0;
+                while (running) {
+                    // a fixed node per client: a third of them reach the leader
+                    RaftNode target = nodes.get(client % nodes.size());
+                    String body = "key=c" + client + "-" + (i++) + "&value=v";
+                    try {
+                        HttpRequest req = HttpRequest.newBuilder(URI.create("http://" + target.getNodeId() + "/client/put"))
+                                .timeout(Duration.ofSeconds(2))
+                                .header("Content-Type", "application/x-www-form-urlencoded")
+                                .POST(HttpRequest.BodyPublishers.ofString(body))
+                                .build();
+                        HttpResponse<InputStream> resp = http.send(req, HttpResponse.BodyHandlers.ofInputStream());
+                        try (InputStream in = resp.body()) {
+                            in.transferTo(java.io.OutputStream.nullOutputStream());
+                        }
+                        puts.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (IOException e) {
+                        // timeouts under overload are part of the picture
+                    }
+                }
+            }, "jitter-load-" + c);
+            t.setDaemon(true);
+            t.start();
+            load.add(t);
+        }
+        lastContact = follower.lastLeaderContactNanos();
+    }
+
+    @Benchmark
+    public long leaderContactGap() throws InterruptedException {
+        long seen;
+        while ((seen = follower.lastLeaderContactNanos()) == lastContact) Thread.sleep(0, 200_000);
+        lastContact = seen;
+        return seen;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        running = false;
+        for (Thread t : load) t.interrupt();
+        for (Thread t : load) t.join(3000);
+        System.out.println("elections during run: " + (follower.currentTerm() - startTerm)
+                + ", client puts completed: " + puts.get());
+        for (RaftNode node : nodes) node.stop();
+        for (HttpServer server : slow) server.stop(0);
+        nodes.clear();
+        slow.clear();
+        load.clear();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String id(int port) {
+        return "localhost:" + port;
+    }
+}
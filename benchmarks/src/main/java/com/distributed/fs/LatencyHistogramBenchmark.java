@@ -0,0 +1,31 @@
+package com.distributed.fs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost of LatencyHistogram.record(), which RaftNode calls for every applied proposal and
+// Replicator for every AppendEntries reply. Values are spread over 1us..100ms like the RPC and
+// commit latencies it sees; run with -t 1, -t 4, ... to see how it holds up when the apply
+// thread and several replicators record into the same histogram.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Benchmark
+    public void record() {
+        histogram.record(ThreadLocalRandom.current().nextLong(1_000, 100_000_000));
+    }
+
+    @Benchmark
+    public long randomOnly() {
+        return ThreadLocalRandom.current().nextLong(1_000, 100_000_000); // baseline for record()
+    }
+}
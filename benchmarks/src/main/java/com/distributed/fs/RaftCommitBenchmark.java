@@ -0,0 +1,107 @@
+package com.distributed.fs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The commit path on its own: a cluster of `nodes` RaftNodes in this JVM, wired together by an
+// InMemoryRaftTransport, so there is no HTTP, no codec and no socket between them; WAL fsyncs
+// and apply are real. Each op proposes one PUT on the leader and waits until it is applied,
+// from 16 threads so the ProposalBatcher has something to batch. putBatchMax=1 turns batching
+// off. proposalsPerSecond is the write throughput, commitLatency's p0.99 the tail a client sees.
+//
+// Use it to catch regressions in the consensus core: run before and after a change, e.g.
+// java -jar benchmarks/target/benchmarks.jar RaftCommitBenchmark -p nodes=3
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class RaftCommitBenchmark {
+
+    @Param({"1", "3", "5"})
+    public int nodes;
+
+    @Param({"1", "256"})
+    public int putBatchMax;
+
+    private Path dir;
+    private final List<RaftNode> cluster = new ArrayList<>();
+    private volatile RaftNode leader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("commit-bench");
+        RaftOptions options = new RaftOptions();
+        options.dataDir = dir.toString();
+        options.putBatchMaxSize = putBatchMax;
+        options.snapshotThreshold = Integer.MAX_VALUE; // snapshots are not what this measures
+        InMemoryRaftTransport transport = new InMemoryRaftTransport();
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= nodes; i++) ids.add("node" + i);
+        for (String id : ids) {
+            List<String> peers = new ArrayList<>(ids);
+            peers.remove(id);
+            RaftNode node = new RaftNode(id, peers, 0, 0, transport, options);
+            transport.register(node);
+            cluster.add(node);
+        }
+        for (RaftNode node : cluster) node.startGroup();
+        leader = awaitLeader();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        RaftMetrics metrics = leader.metrics();
+        for (RaftNode node : cluster) node.stop();
+        cluster.clear();
+        System.out.printf("%nleader propose-to-commit p50=%.2fms p99=%.2fms, commands per batch p50=%d%n",
+                metrics.proposeToCommitNanos.quantile(0.5) / 1e6, metrics.proposeToCommitNanos.quantile(0.99) / 1e6,
+                metrics.proposeBatchEntries.quantile(0.5));
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String proposalsPerSecond() throws Exception {
+        return propose();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String commitLatency() throws Exception {
+        return propose();
+    }
+
+    private String propose() throws Exception {
+        String key = "/files/f" + ThreadLocalRandom.current().nextInt(1 << 16);
+        String result = leader.propose(Command.put(key, "v")).get(10, TimeUnit.SECONDS);
+        // all nodes share one CPU budget here; if a stall cost the leader its term, follow the new one
+        if (!MetadataStateMachine.OK.equals(result)) leader = awaitLeader();
+        return result;
+    }
+
+    private RaftNode awaitLeader() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            for (RaftNode node : cluster) {
+                // the no-op from becomeLeader has committed, so the leader takes writes right away
+                if (node.isLeader() && node.commitIndex() > 0) return node;
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("no leader elected");
+    }
+}
@@ -0,0 +1,71 @@
+package com.distributed.fs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Encode + decode of one AppendEntriesRequest, JSON (Gson) vs. the binary codec.
+// Run with -prof gc to compare allocation per op as well as time.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcCodecBenchmark {
+
+    @Param({"json", "binary"})
+    public String codecName;
+
+    @Param({"0", "64", "1024"})
+    public int entries;
+
+    @Param({"100"})
+    public int commandBytes;
+
+    private RaftCodec codec;
+    private RpcModels.AppendEntriesRequest request;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        codec = RaftCodec.named(codecName);
+        request = new RpcModels.AppendEntriesRequest();
+        request.term = 7;
+        request.leaderId = "localhost:8001";
+        request.prevLogIndex = 123456;
+        request.prevLogTerm = 7;
+        request.leaderCommit = 123400;
+        List<LogEntry> list = new ArrayList<>(entries);
+        String value = "v".repeat(Math.max(0, commandBytes - 20));
+        for (int i = 0; i < entries; i++) list.add(new LogEntry(7, "PUT /files/f" + i + " " + value));
+        request.entries = list;
+        codec.encode(request, out);
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        out.reset();
+        codec.encode(request, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public RpcModels.AppendEntriesRequest decode() throws IOException {
+        return codec.decode(new ByteArrayInputStream(encoded), RpcModels.AppendEntriesRequest.class);
+    }
+
+    @Benchmark
+    public RpcModels.AppendEntriesRequest roundTrip() throws IOException {
+        out.reset();
+        codec.encode(request, out);
+        return codec.decode(new ByteArrayInputStream(out.toByteArray()), RpcModels.AppendEntriesRequest.class);
+    }
+}
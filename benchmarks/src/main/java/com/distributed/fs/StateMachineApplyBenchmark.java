@@ -0,0 +1,50 @@
+package com.distributed.fs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Applying one PUT log entry to MetadataStateMachine: the old "PUT key value" text command
+// (re-split on every node) vs. an encoded Command, i.e. parsing + map update. Run with -prof gc
+// to compare allocation per op as well.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateMachineApplyBenchmark {
+
+    @Param({"text", "command"})
+    public String format;
+
+    @Param({"16", "256"})
+    public int valueBytes;
+
+    private static final int KEYS = 1024;
+
+    private MetadataStateMachine stateMachine;
+    private byte[][] entries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stateMachine = new MetadataStateMachine();
+        String value = "v".repeat(valueBytes);
+        entries = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            String key = "/files/dir" + (i % 32) + "/f" + i;
+            entries[i] = format.equals("text")
+                    ? ("PUT " + key + " " + value).getBytes(StandardCharsets.UTF_8)
+                    : Command.put(key, value).encode();
+        }
+    }
+
+    @Benchmark
+    public String apply() {
+        byte[] entry = entries[next];
+        next = (next + 1) & (KEYS - 1);
+        return stateMachine.apply(entry);
+    }
+}
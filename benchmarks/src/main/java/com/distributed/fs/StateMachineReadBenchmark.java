@@ -0,0 +1,66 @@
+package com.distributed.fs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// MetadataStateMachine.get throughput while a writer thread applies PUTs as fast as it can, the
+// way the apply thread does under write load. lockFree=false wraps each read in the state
+// machine's monitor, which is what get() used to be, so both sides of the change run against
+// the same code. Run with -t 1, -t 2, -t 4, ... to see how reads scale with reader threads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateMachineReadBenchmark {
+
+    @Param({"false", "true"})
+    public boolean lockFree;
+
+    private static final int KEYS = 1 << 16;
+
+    private MetadataStateMachine stateMachine;
+    private String[] keys;
+    private Thread writer;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stateMachine = new MetadataStateMachine();
+        keys = new String[KEYS];
+        byte[][] puts = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "/files/dir" + (i % 64) + "/f" + i;
+            puts[i] = Command.put(keys[i], "v" + i).encode();
+            stateMachine.apply(puts[i]);
+        }
+        running = true;
+        writer = new Thread(() -> {
+            int i = 0;
+            while (running) {
+                stateMachine.apply(puts[i]);
+                i = (i + 1) & (KEYS - 1);
+            }
+        }, "bench-apply");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        writer.join();
+    }
+
+    @Benchmark
+    public String get() {
+        String key = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        if (lockFree) return stateMachine.get(key);
+        synchronized (stateMachine) {
+            return stateMachine.get(key);
+        }
+    }
+}
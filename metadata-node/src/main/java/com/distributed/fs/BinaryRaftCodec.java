@@ -0,0 +1,458 @@
+package com.distributed.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Compact binary encoding of the Raft RPC models.
+ *
+ * Frame: [int length][byte version][byte type][fields...], big-endian. Strings are
+ * [int byteLength][UTF-8 bytes] with -1 for null, log entry commands and snapshot chunks the
+ * same with raw bytes; lists are [int count][items...]. Version 1 sent snapshot chunks as
+ * base64 strings; those frames are still read.
+ * Encoding and decoding borrow a scratch buffer from a small shared pool (not a per-thread one,
+ * which virtual threads would make per-call), so a steady stream of AppendEntries allocates
+ * little beyond the decoded objects themselves.
+ * Lengths and counts come from the peer, so none is used to size an allocation before it has
+ * been checked: the frame against maxFrameBytes, everything inside it against the bytes left.
+ */
+public class BinaryRaftCodec implements RaftCodec {
+    public static final String CONTENT_TYPE = "application/x-raft-binary";
+    static final byte VERSION = 2;
+    static final byte MIN_VERSION = 1; // oldest frame we still decode; raise VERSION when the layout changes
+
+    private static final byte REQUEST_VOTE_REQ = 1;
+    private static final byte REQUEST_VOTE_RESP = 2;
+    private static final byte APPEND_ENTRIES_REQ = 3;
+    private static final byte APPEND_ENTRIES_RESP = 4;
+    private static final byte INSTALL_SNAPSHOT_REQ = 5;
+    private static final byte INSTALL_SNAPSHOT_RESP = 6;
+    private static final byte HEARTBEAT_REQ = 7;
+    private static final byte HEARTBEAT_RESP = 8;
+    private static final byte TIMEOUT_NOW_REQ = 9;
+    private static final byte TIMEOUT_NOW_RESP = 10;
+    private static final byte READ_INDEX_REQ = 11;
+    private static final byte READ_INDEX_RESP = 12;
+
+    static final int DEFAULT_MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    private static final int POOLED_SCRATCH = 8;
+    private static final int MAX_SCRATCH_BYTES = 2 * 1024 * 1024; // bigger frames get a buffer of their own
+
+    private static final ArrayBlockingQueue<Buffer> SCRATCH = new ArrayBlockingQueue<>(POOLED_SCRATCH);
+
+    private final int maxFrameBytes;
+
+    public BinaryRaftCodec() {
+        this(DEFAULT_MAX_FRAME_BYTES);
+    }
+
+    // decode() refuses frames over maxFrameBytes with RaftCodec.TooLargeException, unread
+    public BinaryRaftCodec(int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE + "; v=" + VERSION;
+    }
+
+    @Override
+    public void encode(Object msg, OutputStream out) throws IOException {
+        Buffer b = borrow();
+        try {
+            encodeFrame(b, msg);
+            out.write(b.array(), 0, b.size());
+        } finally {
+            giveBack(b);
+        }
+    }
+
+    private static void encodeFrame(Buffer b, Object msg) {
+        b.putInt(0); // frame length, patched below
+        b.put(VERSION);
+        if (msg instanceof RpcModels.AppendEntriesRequest m) {
+            b.put(APPEND_ENTRIES_REQ);
+            b.putInt(m.term);
+            b.putString(m.leaderId);
+            b.putInt(m.prevLogIndex);
+            b.putInt(m.prevLogTerm);
+            b.putInt(m.leaderCommit);
+            List<LogEntry> entries = m.entries == null ? List.of() : m.entries;
+            b.putInt(entries.size());
+            for (LogEntry e : entries) {
+                b.putInt(e.term);
+                b.putBytes(e.command);
+            }
+        } else if (msg instanceof RpcModels.AppendEntriesResponse m) {
+            b.put(APPEND_ENTRIES_RESP);
+            b.putInt(m.term);
+            b.putBoolean(m.success);
+            b.putInt(m.conflictTerm);
+            b.putInt(m.conflictIndex);
+        } else if (msg instanceof RpcModels.RequestVoteRequest m) {
+            b.put(REQUEST_VOTE_REQ);
+            b.putInt(m.term);
+            b.putString(m.candidateId);
+            b.putInt(m.lastLogIndex);
+            b.putInt(m.lastLogTerm);
+            b.putBoolean(m.preVote);
+            b.putBoolean(m.leadershipTransfer);
+        } else if (msg instanceof RpcModels.RequestVoteResponse m) {
+            b.put(REQUEST_VOTE_RESP);
+            b.putInt(m.term);
+            b.putBoolean(m.voteGranted);
+        } else if (msg instanceof RpcModels.InstallSnapshotRequest m) {
+            b.put(INSTALL_SNAPSHOT_REQ);
+            b.putInt(m.term);
+            b.putString(m.leaderId);
+            b.putInt(m.lastIncludedIndex);
+            b.putInt(m.lastIncludedTerm);
+            b.putLong(m.offset);
+            b.putBytes(m.data);
+            b.putBoolean(m.done);
+            b.putString(m.config);
+        } else if (msg instanceof RpcModels.InstallSnapshotResponse m) {
+            b.put(INSTALL_SNAPSHOT_RESP);
+            b.putInt(m.term);
+            b.putBoolean(m.success);
+        } else if (msg instanceof RpcModels.HeartbeatRequest m) {
+            b.put(HEARTBEAT_REQ);
+            b.putString(m.leaderId);
+            List<RpcModels.GroupHeartbeat> groups = m.groups == null ? List.of() : m.groups;
+            b.putInt(groups.size());
+            for (RpcModels.GroupHeartbeat g : groups) {
+                b.putInt(g.group);
+                b.putInt(g.term);
+                b.putInt(g.commitIndex);
+            }
+        } else if (msg instanceof RpcModels.HeartbeatResponse m) {
+            b.put(HEARTBEAT_RESP);
+            List<RpcModels.GroupHeartbeatAck> groups = m.groups == null ? List.of() : m.groups;
+            b.putInt(groups.size());
+            for (RpcModels.GroupHeartbeatAck g : groups) {
+                b.putInt(g.group);
+                b.putInt(g.term);
+                b.putBoolean(g.success);
+            }
+        } else if (msg instanceof RpcModels.TimeoutNowRequest m) {
+            b.put(TIMEOUT_NOW_REQ);
+            b.putInt(m.term);
+            b.putString(m.leaderId);
+        } else if (msg instanceof RpcModels.TimeoutNowResponse m) {
+            b.put(TIMEOUT_NOW_RESP);
+            b.putInt(m.term);
+            b.putBoolean(m.success);
+        } else if (msg instanceof RpcModels.ReadIndexRequest m) {
+            b.put(READ_INDEX_REQ);
+            b.putInt(m.term);
+        } else if (msg instanceof RpcModels.ReadIndexResponse m) {
+            b.put(READ_INDEX_RESP);
+            b.putInt(m.term);
+            b.putBoolean(m.success);
+            b.putInt(m.readIndex);
+        } else {
+            throw new IllegalArgumentException("no binary encoding for " + msg.getClass().getSimpleName());
+        }
+        b.patchInt(0, b.size() - 4);
+    }
+
+    @Override
+    public <T> T decode(InputStream in, Class<T> type) throws IOException {
+        Buffer b = borrow();
+        try {
+            b.readFully(in, 4);
+            int length = ByteBuffer.wrap(b.array(), 0, 4).getInt();
+            if (length > maxFrameBytes) throw new TooLargeException("raft frame of " + length + " bytes, limit " + maxFrameBytes);
+            if (length < 2) throw new IOException("bad raft frame length " + length);
+            Buffer frame = length > MAX_SCRATCH_BYTES ? new Buffer(length) : b;
+            frame.reset();
+            frame.readFully(in, length);
+            return decodeFrame(ByteBuffer.wrap(frame.array(), 0, length), type);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("raft frame truncated inside a field");
+        } finally {
+            giveBack(b);
+        }
+    }
+
+    private static Buffer borrow() {
+        Buffer b = SCRATCH.poll();
+        if (b == null) return new Buffer(8192);
+        b.reset();
+        return b;
+    }
+
+    // buffers grown past MAX_SCRATCH_BYTES, or that find the pool full, are left to the GC
+    private static void giveBack(Buffer b) {
+        if (b.array().length <= MAX_SCRATCH_BYTES) SCRATCH.offer(b);
+    }
+
+    private static <T> T decodeFrame(ByteBuffer buf, Class<T> type) throws IOException {
+        byte version = buf.get();
+        if (version < MIN_VERSION || version > VERSION) throw new IOException("unsupported raft codec version " + version);
+        byte kind = buf.get();
+        Object msg;
+        switch (kind) {
+            case APPEND_ENTRIES_REQ: {
+                RpcModels.AppendEntriesRequest m = new RpcModels.AppendEntriesRequest();
+                m.term = buf.getInt();
+                m.leaderId = getString(buf);
+                m.prevLogIndex = buf.getInt();
+                m.prevLogTerm = buf.getInt();
+                m.leaderCommit = buf.getInt();
+                int count = getCount(buf, 8);
+                List<LogEntry> entries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int term = buf.getInt();
+                    entries.add(new LogEntry(term, getBytes(buf)));
+                }
+                m.entries = entries;
+                msg = m;
+                break;
+            }
+            case APPEND_ENTRIES_RESP: {
+                RpcModels.AppendEntriesResponse m = new RpcModels.AppendEntriesResponse();
+                m.term = buf.getInt();
+                m.success = buf.get() != 0;
+                m.conflictTerm = buf.getInt();
+                m.conflictIndex = buf.getInt();
+                msg = m;
+                break;
+            }
+            case REQUEST_VOTE_REQ: {
+                RpcModels.RequestVoteRequest m = new RpcModels.RequestVoteRequest();
+                m.term = buf.getInt();
+                m.candidateId = getString(buf);
+                m.lastLogIndex = buf.getInt();
+                m.lastLogTerm = buf.getInt();
+                m.preVote = buf.get() != 0;
+                m.leadershipTransfer = buf.get() != 0;
+                msg = m;
+                break;
+            }
+            case REQUEST_VOTE_RESP: {
+                RpcModels.RequestVoteResponse m = new RpcModels.RequestVoteResponse();
+                m.term = buf.getInt();
+                m.voteGranted = buf.get() != 0;
+                msg = m;
+                break;
+            }
+            case INSTALL_SNAPSHOT_REQ: {
+                RpcModels.InstallSnapshotRequest m = new RpcModels.InstallSnapshotRequest();
+                m.term = buf.getInt();
+                m.leaderId = getString(buf);
+                m.lastIncludedIndex = buf.getInt();
+                m.lastIncludedTerm = buf.getInt();
+                m.offset = buf.getLong();
+                if (version == 1) {
+                    String base64 = getString(buf);
+                    m.data = base64 == null ? null : Base64.getDecoder().decode(base64);
+                } else {
+                    m.data = getBytes(buf);
+                }
+                m.done = buf.get() != 0;
+                m.config = getString(buf);
+                msg = m;
+                break;
+            }
+            case INSTALL_SNAPSHOT_RESP: {
+                RpcModels.InstallSnapshotResponse m = new RpcModels.InstallSnapshotResponse();
+                m.term = buf.getInt();
+                m.success = buf.get() != 0;
+                msg = m;
+                break;
+            }
+            case HEARTBEAT_REQ: {
+                RpcModels.HeartbeatRequest m = new RpcModels.HeartbeatRequest();
+                m.leaderId = getString(buf);
+                int count = getCount(buf, 12);
+                m.groups = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    RpcModels.GroupHeartbeat g = new RpcModels.GroupHeartbeat();
+                    g.group = buf.getInt();
+                    g.term = buf.getInt();
+                    g.commitIndex = buf.getInt();
+                    m.groups.add(g);
+                }
+                msg = m;
+                break;
+            }
+            case HEARTBEAT_RESP: {
+                RpcModels.HeartbeatResponse m = new RpcModels.HeartbeatResponse();
+                int count = getCount(buf, 9);
+                m.groups = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    RpcModels.GroupHeartbeatAck g = new RpcModels.GroupHeartbeatAck();
+                    g.group = buf.getInt();
+                    g.term = buf.getInt();
+                    g.success = buf.get() != 0;
+                    m.groups.add(g);
+                }
+                msg = m;
+                break;
+            }
+            case TIMEOUT_NOW_REQ: {
+                RpcModels.TimeoutNowRequest m = new RpcModels.TimeoutNowRequest();
+                m.term = buf.getInt();
+                m.leaderId = getString(buf);
+                msg = m;
+                break;
+            }
+            case TIMEOUT_NOW_RESP: {
+                RpcModels.TimeoutNowResponse m = new RpcModels.TimeoutNowResponse();
+                m.term = buf.getInt();
+                m.success = buf.get() != 0;
+                msg = m;
+                break;
+            }
+            case READ_INDEX_REQ: {
+                RpcModels.ReadIndexRequest m = new RpcModels.ReadIndexRequest();
+                m.term = buf.getInt();
+                msg = m;
+                break;
+            }
+            case READ_INDEX_RESP: {
+                RpcModels.ReadIndexResponse m = new RpcModels.ReadIndexResponse();
+                m.term = buf.getInt();
+                m.success = buf.get() != 0;
+                m.readIndex = buf.getInt();
+                msg = m;
+                break;
+            }
+            default:
+                throw new IOException("unknown raft message type " + kind);
+        }
+        if (!type.isInstance(msg)) {
+            throw new IOException("expected " + type.getSimpleName() + " but got " + msg.getClass().getSimpleName());
+        }
+        return type.cast(msg);
+    }
+
+    // a list count, each item taking at least itemBytes of what is left of the frame
+    private static int getCount(ByteBuffer buf, int itemBytes) throws IOException {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / itemBytes) throw new IOException("bad raft list count " + count);
+        return count;
+    }
+
+    private static int getLength(ByteBuffer buf) throws IOException {
+        int len = buf.getInt();
+        if (len > buf.remaining()) throw new IOException("bad raft field length " + len);
+        return len;
+    }
+
+    private static byte[] getBytes(ByteBuffer buf) throws IOException {
+        int len = getLength(buf);
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        buf.get(b);
+        return b;
+    }
+
+    private static String getString(ByteBuffer buf) throws IOException {
+        int len = getLength(buf);
+        if (len < 0) return null;
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return s;
+    }
+
+    // growable byte array used for both directions
+    static final class Buffer {
+        private byte[] bytes;
+        private int size;
+
+        Buffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        byte[] array() { return bytes; }
+        int size() { return size; }
+        void reset() { size = 0; }
+
+        private void ensure(int extra) {
+            if (size + extra <= bytes.length) return;
+            byte[] bigger = new byte[Math.max(bytes.length * 2, size + extra)];
+            System.arraycopy(bytes, 0, bigger, 0, size);
+            bytes = bigger;
+        }
+
+        void put(byte v) {
+            ensure(1);
+            bytes[size++] = v;
+        }
+
+        void putBoolean(boolean v) {
+            put((byte) (v ? 1 : 0));
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            patchInt(size, v);
+            size += 4;
+        }
+
+        void patchInt(int at, int v) {
+            bytes[at] = (byte) (v >>> 24);
+            bytes[at + 1] = (byte) (v >>> 16);
+            bytes[at + 2] = (byte) (v >>> 8);
+            bytes[at + 3] = (byte) v;
+        }
+
+        void putLong(long v) {
+            putInt((int) (v >>> 32));
+            putInt((int) v);
+        }
+
+        // ASCII is copied straight in; anything else falls back to String.getBytes. Either way the
+        // buffer grows by what is written, not by a worst-case guess that could push it past
+        // MAX_SCRATCH_BYTES and out of the pool
+        void putString(String s) {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            int n = s.length();
+            for (int i = 0; i < n; i++) {
+                if (s.charAt(i) >= 0x80) {
+                    putBytes(s.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            ensure(4 + n);
+            putInt(n);
+            for (int i = 0; i < n; i++) bytes[size++] = (byte) s.charAt(i);
+        }
+
+        void putBytes(byte[] v) {
+            if (v == null) {
+                putInt(-1);
+                return;
+            }
+            ensure(4 + v.length);
+            putInt(v.length);
+            System.arraycopy(v, 0, bytes, size, v.length);
+            size += v.length;
+        }
+
+        void readFully(InputStream in, int len) throws IOException {
+            ensure(len);
+            int read = 0;
+            while (read < len) {
+                int n = in.read(bytes, size + read, len - read);
+                if (n < 0) throw new EOFException("raft frame truncated");
+                read += n;
+            }
+            size += len;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.distributed.fs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// The most recent changes the state machine applied, oldest first, for watchers that want to
+// hear about writes instead of polling /client/get. Each change carries the log index of the
+// entry that made it, so a watcher resumes from the index after the last one it saw, on this
+// node or on any other member of the group (they all apply the same entries).
+//
+// Memory is bounded by capacity, however many watchers there are or however slow they are:
+// the oldest changes are dropped as new ones arrive. A watcher asking for an index whose changes
+// were dropped (or that an installed snapshot skipped over) gets resync instead, and should
+// re-read the keys it cares about and then watch from the nextIndex it was given. Changes can
+// be delivered twice across a resync but never silently lost.
+//
+// A watch with nothing to report yet doesn't hold a thread: it parks as a Waiter and is
+// completed by the apply thread (advance/reset) or when its timeout runs out.
+public class ChangeFeed {
+    public static class Change {
+        public final int index;
+        public final String key;
+        public final byte[] value; // null: the key was deleted
+
+        Change(int index, String key, byte[] value) {
+            this.index = index;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    public static class Changes {
+        public List<Change> changes = new ArrayList<>();
+        public int nextIndex;   // pass back as fromIndex for the next watch
+        public boolean resync;  // changes from fromIndex on are gone: re-read, then watch from nextIndex
+    }
+
+    private static class Waiter {
+        final String key;
+        final String prefix;
+        final int limit;
+        int fromIndex; // moves forward as applied changes turn out not to match
+        final CompletableFuture<Changes> result = new CompletableFuture<>();
+
+        Waiter(String key, String prefix, int fromIndex, int limit) {
+            this.key = key;
+            this.prefix = prefix;
+            this.fromIndex = fromIndex;
+            this.limit = limit;
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private int appliedThrough;  // every change up to this index has been added
+    private int truncatedThrough; // changes at or below this index may be missing
+
+    public ChangeFeed(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public boolean enabled() {
+        return capacity > 0;
+    }
+
+    // apply thread: the entry at index changed key (value null = deleted); visible after advance
+    synchronized void add(int index, String key, byte[] value) {
+        if (!enabled()) return;
+        changes.addLast(new Change(index, key, value));
+        if (changes.size() > capacity) truncatedThrough = changes.pollFirst().index;
+    }
+
+    // apply thread: entries through index are applied, so their changes may be handed out
+    void advance(int index) {
+        List<Waiter> ready;
+        synchronized (this) {
+            if (index <= appliedThrough) return;
+            appliedThrough = index;
+            ready = wake();
+        }
+        for (Waiter w : ready) w.result.complete(null); // the watch re-reads, see watch()
+    }
+
+    // apply thread: the state was replaced by a snapshot at index; what happened before is unknown
+    void reset(int index) {
+        List<Waiter> ready;
+        synchronized (this) {
+            changes.clear();
+            appliedThrough = index;
+            truncatedThrough = index;
+            ready = wake();
+        }
+        for (Waiter w : ready) w.result.complete(null);
+    }
+
+    // Changes to key (or, if key is null, to keys starting with prefix; both null = every key)
+    // from fromIndex on, at most about limit of them: an entry's changes are never split, so a
+    // batch may go over. With none to report yet, completes when there are or after timeoutMs,
+    // then with no changes and a nextIndex past everything applied meanwhile.
+    public CompletableFuture<Changes> watch(String key, String prefix, int fromIndex, int limit, long timeoutMs) {
+        Waiter w = new Waiter(key, prefix, fromIndex, limit);
+        synchronized (this) {
+            Changes now = read(w);
+            if (now.resync || !now.changes.isEmpty() || timeoutMs <= 0) return CompletableFuture.completedFuture(now);
+            w.fromIndex = now.nextIndex;
+            waiters.add(w);
+        }
+        w.result.completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS);
+        return w.result.thenApply(ignored -> {
+            synchronized (this) {
+                waiters.remove(w);
+                return read(w);
+            }
+        });
+    }
+
+    // under the lock: waiters that now have something to report, removed from the list
+    private List<Waiter> wake() {
+        if (waiters.isEmpty()) return Collections.emptyList();
+        List<Waiter> ready = new ArrayList<>();
+        for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+            Waiter w = it.next();
+            Changes now = read(w);
+            if (now.resync || !now.changes.isEmpty()) {
+                it.remove();
+                ready.add(w);
+            } else {
+                w.fromIndex = now.nextIndex; // nothing matched: don't look at these entries again
+            }
+        }
+        return ready;
+    }
+
+    // under the lock: walks back from the newest change only as far as w.fromIndex
+    private Changes read(Waiter w) {
+        Changes out = new Changes();
+        if (w.fromIndex <= truncatedThrough) {
+            out.resync = true;
+            out.nextIndex = appliedThrough + 1;
+            return out;
+        }
+        List<Change> matched = new ArrayList<>();
+        for (Iterator<Change> it = changes.descendingIterator(); it.hasNext(); ) {
+            Change c = it.next();
+            if (c.index < w.fromIndex) break;
+            if (c.index <= appliedThrough && matches(w, c.key)) matched.add(c);
+        }
+        Collections.reverse(matched);
+        int cut = matched.size();
+        if (cut > w.limit) {
+            cut = w.limit;
+            int lastIndex = matched.get(cut - 1).index;
+            while (cut < matched.size() && matched.get(cut).index == lastIndex) cut++;
+        }
+        out.changes = cut == matched.size() ? matched : new ArrayList<>(matched.subList(0, cut));
+        out.nextIndex = cut < matched.size() ? matched.get(cut - 1).index + 1 : Math.max(w.fromIndex, appliedThrough + 1);
+        return out;
+    }
+
+    private static boolean matches(Waiter w, String key) {
+        if (w.key != null) return w.key.equals(key);
+        return w.prefix == null || key.startsWith(w.prefix);
+    }
+}
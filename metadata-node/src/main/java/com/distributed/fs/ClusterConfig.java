@@ -0,0 +1,96 @@
+package com.distributed.fs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Members of one Raft group. Voters elect leaders and make up commit quorums; learners only
+// receive the log (read replicas, or new nodes catching up before they are promoted), so adding
+// one never changes how many acks a commit needs.
+//
+// A configuration travels in CONFIG log entries and with snapshots, written as
+// "voter,voter;learner,learner". It takes effect on a node as soon as the entry is in its log,
+// committed or not, and changes one member at a time (Raft's single-server changes), so any two
+// consecutive configurations share a majority.
+public class ClusterConfig {
+    public final List<String> voters;
+    public final List<String> learners;
+
+    public ClusterConfig(List<String> voters, List<String> learners) {
+        this.voters = List.copyOf(voters);
+        this.learners = List.copyOf(learners);
+    }
+
+    // nobody: a node started with --join waits to learn the real configuration from the leader
+    public static ClusterConfig empty() {
+        return new ClusterConfig(List.of(), List.of());
+    }
+
+    public boolean isVoter(String id) { return voters.contains(id); }
+    public boolean isLearner(String id) { return learners.contains(id); }
+    public boolean contains(String id) { return isVoter(id) || isLearner(id); }
+    public int majority() { return voters.size() / 2 + 1; }
+
+    // every member but self: the nodes a leader replicates to
+    public List<String> othersThan(String self) {
+        List<String> out = new ArrayList<>();
+        for (String v : voters) if (!v.equals(self)) out.add(v);
+        for (String l : learners) if (!l.equals(self)) out.add(l);
+        return out;
+    }
+
+    public List<String> votersOtherThan(String self) {
+        List<String> out = new ArrayList<>(voters);
+        out.remove(self);
+        return out;
+    }
+
+    public ClusterConfig withLearner(String id) {
+        List<String> l = new ArrayList<>(learners);
+        l.add(id);
+        return new ClusterConfig(voters, l);
+    }
+
+    public ClusterConfig promote(String id) {
+        List<String> v = new ArrayList<>(voters);
+        v.add(id);
+        List<String> l = new ArrayList<>(learners);
+        l.remove(id);
+        return new ClusterConfig(v, l);
+    }
+
+    public ClusterConfig without(String id) {
+        List<String> v = new ArrayList<>(voters);
+        v.remove(id);
+        List<String> l = new ArrayList<>(learners);
+        l.remove(id);
+        return new ClusterConfig(v, l);
+    }
+
+    public String encode() {
+        return String.join(",", voters) + ";" + String.join(",", learners);
+    }
+
+    public byte[] encodeBytes() {
+        return encode().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static ClusterConfig decode(String s) {
+        String[] parts = s.split(";", -1);
+        return new ClusterConfig(split(parts[0]), parts.length > 1 ? split(parts[1]) : List.of());
+    }
+
+    public static ClusterConfig decode(byte[] b) {
+        return decode(new String(b, StandardCharsets.UTF_8));
+    }
+
+    private static List<String> split(String s) {
+        return s.isEmpty() ? List.of() : Arrays.asList(s.split(","));
+    }
+
+    @Override
+    public String toString() {
+        return "voters=" + voters + " learners=" + learners;
+    }
+}
@@ -0,0 +1,209 @@
+package com.distributed.fs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A state machine command as stored in a LogEntry. The leader encodes each command once; every
+ * node decodes it with a few reads from a ByteBuffer instead of re-parsing text.
+ *
+ * Encoding: [byte op] then, big-endian,
+ *   PUT     [key][value]
+ *   DELETE  [key]
+ *   CAS     [key][expected][value]   expected = -1 length: key must be absent
+ *   BATCH   [int count][int length][command]...
+ *   CONFIG  [config]                  a ClusterConfig, for RaftNode; the state machine skips it
+ *   NOOP    nothing
+ * where [key]/[value] are [int length][bytes]. Opcodes stay below 0x20 so an encoded command can
+ * never be mistaken for the "PUT key value" text commands found in logs written before this format.
+ * New ops get new opcodes; existing encodings never change.
+ */
+public final class Command {
+    public static final byte NOOP = 0;
+    public static final byte PUT = 1;
+    public static final byte DELETE = 2;
+    public static final byte CAS = 3;
+    public static final byte BATCH = 4;
+    public static final byte CONFIG = 5;
+
+    public final byte op;
+    public final byte[] key;
+    public final byte[] value;        // PUT, CAS, CONFIG
+    public final byte[] expected;     // CAS; null = key must be absent
+    public final List<Command> ops;   // BATCH
+
+    private Command(byte op, byte[] key, byte[] value, byte[] expected, List<Command> ops) {
+        this.op = op;
+        this.key = key;
+        this.value = value;
+        this.expected = expected;
+        this.ops = ops;
+    }
+
+    public static Command noop() {
+        return new Command(NOOP, null, null, null, null);
+    }
+
+    public static Command put(byte[] key, byte[] value) {
+        return new Command(PUT, key, value, null, null);
+    }
+
+    public static Command put(String key, String value) {
+        return put(utf8(key), utf8(value));
+    }
+
+    public static Command delete(byte[] key) {
+        return new Command(DELETE, key, null, null, null);
+    }
+
+    public static Command delete(String key) {
+        return delete(utf8(key));
+    }
+
+    public static Command cas(byte[] key, byte[] expected, byte[] value) {
+        return new Command(CAS, key, value, expected, null);
+    }
+
+    public static Command cas(String key, String expected, String value) {
+        return cas(utf8(key), expected == null ? null : utf8(expected), utf8(value));
+    }
+
+    // applied atomically: if any CAS inside fails, none of the ops take effect
+    public static Command batch(List<Command> ops) {
+        for (Command c : ops) {
+            if (c.op != PUT && c.op != DELETE && c.op != CAS) {
+                throw new IllegalArgumentException("a batch holds only PUT, DELETE and CAS, not op " + c.op);
+            }
+        }
+        return new Command(BATCH, null, null, null, List.copyOf(ops));
+    }
+
+    // a membership change (see ClusterConfig)
+    public static Command config(ClusterConfig config) {
+        return new Command(CONFIG, null, config.encodeBytes(), null, null);
+    }
+
+    // true if an encoded entry holds a CONFIG command, without decoding the rest of it
+    public static boolean isConfig(byte[] data) {
+        return data.length > 0 && data[0] == CONFIG;
+    }
+
+    public String keyString() {
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    // true if data is an encoded Command rather than a legacy text command
+    public static boolean isEncoded(byte[] data) {
+        return data.length > 0 && data[0] >= 0 && data[0] < 0x20;
+    }
+
+    public byte[] encode() {
+        ByteBuffer buf = ByteBuffer.allocate(encodedSize());
+        writeTo(buf);
+        return buf.array();
+    }
+
+    private int encodedSize() {
+        switch (op) {
+            case PUT: return 1 + 4 + key.length + 4 + value.length;
+            case DELETE: return 1 + 4 + key.length;
+            case CONFIG: return 1 + 4 + value.length;
+            case CAS: return 1 + 4 + key.length + 4 + (expected == null ? 0 : expected.length) + 4 + value.length;
+            case BATCH: {
+                int size = 1 + 4;
+                for (Command c : ops) size += 4 + c.encodedSize();
+                return size;
+            }
+            default: return 1;
+        }
+    }
+
+    private void writeTo(ByteBuffer buf) {
+        buf.put(op);
+        switch (op) {
+            case PUT:
+                putBytes(buf, key);
+                putBytes(buf, value);
+                break;
+            case DELETE:
+                putBytes(buf, key);
+                break;
+            case CONFIG:
+                putBytes(buf, value);
+                break;
+            case CAS:
+                putBytes(buf, key);
+                putBytes(buf, expected);
+                putBytes(buf, value);
+                break;
+            case BATCH:
+                buf.putInt(ops.size());
+                for (Command c : ops) {
+                    buf.putInt(c.encodedSize());
+                    c.writeTo(buf);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public static Command decode(byte[] data) {
+        return read(ByteBuffer.wrap(data));
+    }
+
+    private static Command read(ByteBuffer buf) {
+        byte op = buf.get();
+        switch (op) {
+            case NOOP:
+                return noop();
+            case PUT:
+                return put(getBytes(buf), getBytes(buf));
+            case DELETE:
+                return delete(getBytes(buf));
+            case CONFIG:
+                return new Command(CONFIG, null, getBytes(buf), null, null);
+            case CAS: {
+                byte[] key = getBytes(buf);
+                byte[] expected = getBytes(buf);
+                return cas(key, expected, getBytes(buf));
+            }
+            case BATCH: {
+                int count = buf.getInt();
+                List<Command> ops = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int length = buf.getInt();
+                    int end = buf.position() + length;
+                    ops.add(read(buf));
+                    buf.position(end);
+                }
+                return batch(ops);
+            }
+            default:
+                throw new IllegalArgumentException("unknown command opcode " + op);
+        }
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] b) {
+        if (b == null) {
+            buf.putInt(-1);
+            return;
+        }
+        buf.putInt(b.length);
+        buf.put(b);
+    }
+
+    private static byte[] getBytes(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        buf.get(b);
+        return b;
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+package com.distributed.fs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Runs a whole cluster inside one JVM: each node registers the groups it hosts under its id, and
+// an RPC to that id calls the peer's RaftNode handler on the caller's thread, the way
+// RaftHttpServer would after decoding the request. Messages are passed as objects, never
+// encoded, so what remains is the cost of the consensus core itself (locking, the WAL, apply).
+//
+// A node that isn't registered (not started yet, or removed with disconnect() to simulate a
+// crash or partition) is unreachable: calls to it return null.
+public class InMemoryRaftTransport implements RaftTransport {
+    private final Map<String, List<RaftNode>> nodes = new ConcurrentHashMap<>();
+
+    public void register(String nodeId, List<RaftNode> groups) {
+        nodes.put(nodeId, groups);
+    }
+
+    public void register(RaftNode node) {
+        register(node.getNodeId(), List.of(node));
+    }
+
+    public void disconnect(String nodeId) {
+        nodes.remove(nodeId);
+    }
+
+    @Override
+    public RpcModels.RequestVoteResponse requestVote(String peer, int group, RpcModels.RequestVoteRequest req) {
+        RaftNode node = group(peer, group);
+        return node == null ? null : node.onRequestVote(req);
+    }
+
+    @Override
+    public RpcModels.AppendEntriesResponse appendEntries(String peer, int group, RpcModels.AppendEntriesRequest req) {
+        RaftNode node = group(peer, group);
+        return node == null ? null : node.onAppendEntries(req);
+    }
+
+    @Override
+    public RpcModels.InstallSnapshotResponse installSnapshot(String peer, int group, RpcModels.InstallSnapshotRequest req) {
+        RaftNode node = group(peer, group);
+        return node == null ? null : node.onInstallSnapshot(req);
+    }
+
+    @Override
+    public RpcModels.TimeoutNowResponse timeoutNow(String peer, int group, RpcModels.TimeoutNowRequest req) {
+        RaftNode node = group(peer, group);
+        return node == null ? null : node.onTimeoutNow(req);
+    }
+
+    @Override
+    public RpcModels.ReadIndexResponse readIndex(String peer, int group, RpcModels.ReadIndexRequest req) {
+        RaftNode node = group(peer, group);
+        return node == null ? null : node.onReadIndex(req);
+    }
+
+    @Override
+    public RpcModels.HeartbeatResponse heartbeat(String peer, RpcModels.HeartbeatRequest req) {
+        List<RaftNode> groups = nodes.get(peer);
+        return groups == null ? null : RaftGroups.onHeartbeat(groups, req);
+    }
+
+    private RaftNode group(String peer, int group) {
+        List<RaftNode> groups = nodes.get(peer);
+        return groups == null || group < 0 || group >= groups.size() ? null : groups.get(group);
+    }
+}
@@ -0,0 +1,90 @@
+package com.distributed.fs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// The original Gson encoding, kept for clusters that haven't switched to the binary codec.
+public class JsonRaftCodec implements RaftCodec {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(LogEntry.class, new LogEntryAdapter())
+            .registerTypeAdapter(byte[].class, new BytesAdapter())
+            .create();
+
+    // {"term":1,"data":"<base64 Command>"}; entries from older nodes arrive as {"term":1,"command":"PUT k v"}
+    private static final class LogEntryAdapter extends TypeAdapter<LogEntry> {
+        @Override
+        public void write(JsonWriter out, LogEntry e) throws IOException {
+            if (e == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("term").value(e.term);
+            out.name("data").value(Base64.getEncoder().encodeToString(e.command));
+            out.endObject();
+        }
+
+        @Override
+        public LogEntry read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            int term = 0;
+            byte[] command = new byte[0];
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "term": term = in.nextInt(); break;
+                    case "data": command = Base64.getDecoder().decode(in.nextString()); break;
+                    case "command": command = in.nextString().getBytes(StandardCharsets.UTF_8); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new LogEntry(term, command);
+        }
+    }
+
+    // byte[] fields (InstallSnapshot chunks) as a base64 string, as they were sent before they
+    // became byte[]
+    private static final class BytesAdapter extends TypeAdapter<byte[]> {
+        @Override
+        public void write(JsonWriter out, byte[] b) throws IOException {
+            if (b == null) out.nullValue();
+            else out.value(Base64.getEncoder().encodeToString(b));
+        }
+
+        @Override
+        public byte[] read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return Base64.getDecoder().decode(in.nextString());
+        }
+    }
+
+    @Override
+    public String contentType() {
+        return "application/json";
+    }
+
+    @Override
+    public void encode(Object msg, OutputStream out) throws IOException {
+        out.write(GSON.toJson(msg).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public <T> T decode(InputStream in, Class<T> type) throws IOException {
+        return GSON.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), type);
+    }
+}
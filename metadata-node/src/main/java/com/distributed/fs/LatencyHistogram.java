@@ -0,0 +1,70 @@
+package com.distributed.fs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size histogram of non-negative longs (nanoseconds, or counts such as batch sizes), laid
+// out like an HdrHistogram with one significant binary digit group: every power of two is split
+// into SUB_BUCKETS linear buckets, so any recorded value is reported to within 1/SUB_BUCKETS
+// (about 6%) from 1 up to Long.MAX_VALUE, in under 8KB. record() is one atomic increment plus
+// two LongAdder adds and never allocates or locks, so it can sit on the commit and RPC paths.
+// Counts are kept since the node started.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) m = max.get();
+    }
+
+    public long count() { return count.sum(); }
+    public long sum() { return sum.sum(); }
+    public long max() { return max.get(); }
+
+    // the value at quantile q (0..1), as the upper end of the bucket it falls in; 0 when empty
+    public long quantile(double q) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+
+    // values below SUB_BUCKETS get a bucket each; above that, the exponent picks a group of
+    // SUB_BUCKETS buckets and the next SUB_BITS bits below the leading one pick the bucket
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exp = (bucket >> SUB_BITS) + SUB_BITS - 1;
+        long width = 1L << (exp - SUB_BITS);
+        long lower = (1L << exp) + (bucket & (SUB_BUCKETS - 1)) * width;
+        return lower + width - 1;
+    }
+}
@@ -1,11 +1,22 @@
 package com.distributed.fs;
 
+import java.nio.charset.StandardCharsets;
+
 public class LogEntry {
     public final int term;
-    public final String command; // e.g. "PUT key value" or "DELETE key"
+    public final byte[] command; // an encoded Command; logs from before Command hold "PUT key value" text
 
-    public LogEntry(int term, String command) {
+    public LogEntry(int term, byte[] command) {
         this.term = term;
         this.command = command;
     }
+
+    public LogEntry(int term, Command command) {
+        this(term, command.encode());
+    }
+
+    // a text command, as written before Command existed ("PUT key value", "DELETE key")
+    public LogEntry(int term, String command) {
+        this(term, command.getBytes(StandardCharsets.UTF_8));
+    }
 }
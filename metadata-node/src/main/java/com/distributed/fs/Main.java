@@ -5,7 +5,8 @@ import java.util.List;
 
 public class Main {
     public static void main(String[] args) throws Exception {
-        // Usage: --port=8001 --peers=localhost:8002,localhost:8003
+        // Usage: --port=8001 --peers=localhost:8002,localhost:8003 [--data-dir=raft-data] [--wal-group-commit=true] [--groups=1]
+        //        a node joining a running cluster: --port=8004 --join=true (then /admin/members on the leader)
         int port = 8001;
         String peersArg = "";
         for (String arg : args) {
@@ -16,8 +17,8 @@ public class Main {
         String myId = "localhost:" + port;
 
         System.out.println("Starting metadata node " + myId + " with peers " + peers);
-        RaftNode node = new RaftNode(myId, peers, port);
-        node.start();
+        RaftGroups host = new RaftGroups(myId, peers, port, RaftOptions.fromArgs(args));
+        host.start();
         // keep running
         Thread.currentThread().join();
     }
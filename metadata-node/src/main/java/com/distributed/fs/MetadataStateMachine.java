@@ -1,30 +1,308 @@
 package com.distributed.fs;
 
-import java.util.HashMap;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
 
+// Key/value state built by applying committed log entries. There is one writer (RaftNode's apply
+// thread, which also snapshots and restores), and writers still synchronize among themselves, but
+// reads don't take that lock: the map is a ConcurrentSkipListMap, so /client/get never waits for
+// an apply in progress, and keys are kept in order so a directory can be listed a page at a time.
+// Every change a reader can observe is one a committed entry made: a batch is checked in full
+// before any of it is published, and a restore swaps in a complete new map. getAll and list read
+// several keys as of a single point between applies (see `writes`), so neither sees half a
+// batch. Applies that know their log index also feed every change they make to `changes`, for
+// watchers.
 public class MetadataStateMachine {
-    private final Map<String, String> map = new HashMap<>();
+    public static final String OK = "OK";
+    public static final String CAS_FAILED = "CAS_FAILED";
 
-    // apply command like "PUT key value" or "DELETE key"
-    public synchronized void apply(String command) {
-        if (command == null) return;
+    private static final byte[] DELETED = new byte[0]; // marks a key a batch removes (compared by identity)
+
+    private volatile ConcurrentNavigableMap<String, byte[]> map = new ConcurrentSkipListMap<>();
+    // bumped before and after every apply, so it is odd while one is in progress: a reader that
+    // sees the same even value on both sides of its reads saw no apply in between
+    private volatile int writes;
+    private final ChangeFeed changes;
+
+    public MetadataStateMachine() {
+        this(0);
+    }
+
+    // watchBuffer: how many recent changes the ChangeFeed keeps for watchers; 0 turns it off
+    public MetadataStateMachine(int watchBuffer) {
+        this.changes = new ChangeFeed(watchBuffer);
+    }
+
+    public ChangeFeed changes() {
+        return changes;
+    }
+
+    public static class ListEntry {
+        public final String key;
+        public final byte[] value;
+
+        ListEntry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    public static class ListPage {
+        public List<ListEntry> entries = new ArrayList<>();
+        public String lastKey; // set when more keys follow: pass it back as `after` for the next page
+        public String error;   // set instead of entries when the read couldn't be served
+    }
+
+    // apply one log entry: an encoded Command, or a "PUT key value" / "DELETE key" text command
+    // from a log written before Command existed. Returns OK, or CAS_FAILED if a CAS (or a batch
+    // containing one) didn't match and so changed nothing.
+    public String apply(byte[] command) {
+        return apply(0, command);
+    }
+
+    // as apply(command), for the entry at log index; its changes go to the ChangeFeed, which
+    // hands them out once the caller advance()s it past index
+    public synchronized String apply(int index, byte[] command) {
+        if (command == null || command.length == 0) return OK;
+        writes++;
+        try {
+            return applyCommand(index, command);
+        } finally {
+            writes++;
+        }
+    }
+
+    private String applyCommand(int index, byte[] command) {
+        if (!Command.isEncoded(command)) {
+            applyText(index, new String(command, StandardCharsets.UTF_8));
+            return OK;
+        }
+        Command c = Command.decode(command);
+        if (c.op != Command.BATCH) return apply(index, c) ? OK : CAS_FAILED;
+        // all or nothing: work out the batch's final value per key first, publish only if every CAS held
+        Map<String, byte[]> staged = new LinkedHashMap<>();
+        for (Command op : c.ops) {
+            String key = op.keyString();
+            byte[] current = staged.containsKey(key) ? staged.get(key) : map.get(key);
+            if (current == DELETED) current = null;
+            switch (op.op) {
+                case Command.PUT: staged.put(key, op.value); break;
+                case Command.DELETE: staged.put(key, DELETED); break;
+                case Command.CAS:
+                    if (!casMatches(current, op.expected)) return CAS_FAILED;
+                    staged.put(key, op.value);
+                    break;
+                default: break;
+            }
+        }
+        for (Map.Entry<String, byte[]> e : staged.entrySet()) {
+            if (e.getValue() == DELETED) map.remove(e.getKey()); else map.put(e.getKey(), e.getValue());
+            changed(index, e.getKey(), e.getValue() == DELETED ? null : e.getValue());
+        }
+        return OK;
+    }
+
+    private static boolean casMatches(byte[] current, byte[] expected) {
+        return expected == null ? current == null : current != null && Arrays.equals(current, expected);
+    }
+
+    private boolean apply(int index, Command c) {
+        switch (c.op) {
+            case Command.PUT: {
+                String key = c.keyString();
+                map.put(key, c.value);
+                changed(index, key, c.value);
+                return true;
+            }
+            case Command.DELETE: {
+                String key = c.keyString();
+                map.remove(key);
+                changed(index, key, null);
+                return true;
+            }
+            case Command.CAS: {
+                String key = c.keyString();
+                boolean matches = casMatches(map.get(key), c.expected);
+                if (matches) {
+                    map.put(key, c.value);
+                    changed(index, key, c.value);
+                }
+                return matches;
+            }
+            default:
+                return true; // NOOP, or CONFIG (membership is RaftNode's business)
+        }
+    }
+
+    // the original text format; anything else (e.g. an old leader's "NOOP") is ignored
+    private void applyText(int index, String command) {
         String[] parts = command.split(" ", 3);
         if (parts.length >= 2) {
             String op = parts[0];
             String key = parts[1];
             if ("PUT".equalsIgnoreCase(op) && parts.length == 3) {
                 String value = parts[2];
-                map.put(key, value);
-                System.out.println("APPLY PUT " + key + " -> " + value);
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                map.put(key, bytes);
+                changed(index, key, bytes);
             } else if ("DELETE".equalsIgnoreCase(op)) {
                 map.remove(key);
-                System.out.println("APPLY DELETE " + key);
+                changed(index, key, null);
             }
         }
     }
 
-    public synchronized String get(String key) {
+    private void changed(int index, String key, byte[] value) {
+        if (index > 0) changes.add(index, key, value);
+    }
+
+    // values are returned as UTF-8 text for the HTTP API; getBytes has the raw value
+    public String get(String key) {
+        byte[] value = map.get(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    public byte[] getBytes(String key) {
         return map.get(key);
     }
+
+    // the values of several keys (null = absent) in the order given, all as of the same point
+    // between two applies
+    public ListPage getAll(List<String> keys) {
+        return betweenApplies(() -> read(keys));
+    }
+
+    // Optimistic: read without the lock and retry if an apply ran meanwhile; if applies keep
+    // winning, read under the apply lock instead.
+    private ListPage betweenApplies(Supplier<ListPage> read) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            int before = writes;
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            ListPage page = read.get();
+            if (writes == before) return page;
+        }
+        synchronized (this) {
+            return read.get();
+        }
+    }
+
+    private ListPage read(List<String> keys) {
+        ConcurrentNavigableMap<String, byte[]> m = map;
+        ListPage page = new ListPage();
+        for (String key : keys) page.entries.add(new ListEntry(key, m.get(key)));
+        return page;
+    }
+
+    // Up to limit entries in key order with from <= key < to that start with prefix (any of them
+    // may be null = unbounded), beginning just after `after` if given. Walks only the page itself
+    // (plus one key to see whether more follow), never the rest of the keyspace. Like getAll, a
+    // page is read as of one point between applies.
+    public ListPage list(String prefix, String from, String to, String after, int limit) {
+        String lo = from;
+        if (prefix != null && (lo == null || prefix.compareTo(lo) > 0)) lo = prefix;
+        boolean loInclusive = true;
+        if (after != null && (lo == null || after.compareTo(lo) >= 0)) {
+            lo = after;
+            loInclusive = false;
+        }
+        String hi = to;
+        String prefixEnd = prefix == null ? null : prefixEnd(prefix);
+        if (prefixEnd != null && (hi == null || prefixEnd.compareTo(hi) < 0)) hi = prefixEnd;
+
+        if (lo != null && hi != null && lo.compareTo(hi) >= 0) return new ListPage();
+        String low = lo;
+        boolean lowInclusive = loInclusive;
+        String high = hi;
+        return betweenApplies(() -> walk(low, lowInclusive, high, limit));
+    }
+
+    private ListPage walk(String lo, boolean loInclusive, String hi, int limit) {
+        ListPage page = new ListPage();
+        ConcurrentNavigableMap<String, byte[]> view = map;
+        if (lo != null) view = view.tailMap(lo, loInclusive);
+        if (hi != null) view = view.headMap(hi, false);
+        for (Map.Entry<String, byte[]> e : view.entrySet()) {
+            if (page.entries.size() == limit) {
+                page.lastKey = page.entries.get(limit - 1).key;
+                break;
+            }
+            page.entries.add(new ListEntry(e.getKey(), e.getValue()));
+        }
+        return page;
+    }
+
+    // smallest string above every string starting with prefix, or null if there is none
+    private static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) return prefix.substring(0, i) + (char) (c + 1);
+        }
+        return null;
+    }
+
+    // serialize the whole map: [count] then [keyLen][key][valueLen][value] per entry
+    public synchronized byte[] snapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(map.size());
+            for (Map.Entry<String, byte[]> e : map.entrySet()) {
+                writeString(out, e.getKey());
+                writeBytes(out, e.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // ByteArrayOutputStream doesn't throw
+        }
+        return bytes.toByteArray();
+    }
+
+    // as restore(snapshot), for a snapshot taking the state to log index: watchers asking for
+    // anything before it must resync
+    public synchronized void restore(int index, byte[] snapshot) {
+        restore(snapshot);
+        changes.reset(index);
+    }
+
+    // replace the current state with a snapshot produced by snapshot()
+    public synchronized void restore(byte[] snapshot) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+            int count = in.readInt();
+            ConcurrentNavigableMap<String, byte[]> restored = new ConcurrentSkipListMap<>();
+            for (int i = 0; i < count; i++) {
+                restored.put(readString(in), readBytes(in));
+            }
+            map = restored; // readers move from the old state to the new one in a single step
+        } catch (IOException e) {
+            throw new UncheckedIOException("corrupt metadata snapshot", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return b;
+    }
 }
@@ -0,0 +1,89 @@
+package com.distributed.fs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Collects concurrent client proposals on the leader so that many puts become one log append,
+// one WAL fsync and one replication round. A batch is flushed when it reaches maxBatch commands
+// or lingerMs after its first command arrived, whichever comes first. While a batch is being
+// written the next one keeps filling up, so batches grow with load.
+public class ProposalBatcher {
+    public static class Proposal {
+        public final byte[] command; // encoded Command
+        public final CompletableFuture<String> result = new CompletableFuture<>();
+        String outcome = MetadataStateMachine.OK; // set by the apply thread, e.g. CAS_FAILED
+        final long submittedNanos = System.nanoTime(); // start of the propose-to-commit latency
+
+        Proposal(byte[] command) {
+            this.command = command;
+        }
+    }
+
+    private static final Proposal WAKE = new Proposal(new byte[0]); // queued by stop() so take() returns
+
+    private final RaftNode node;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final LinkedBlockingQueue<Proposal> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean stopped;
+
+    public ProposalBatcher(RaftNode node, int maxBatch, long lingerMs) {
+        this.node = node;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.flusher = new Thread(this::run, "proposal-batcher-" + node.name());
+        this.flusher.setDaemon(true);
+    }
+
+    public void start() {
+        flusher.start();
+    }
+
+    // never interrupts the flusher: it may be inside a WAL write or fsync, and an interrupt closes
+    // the FileChannel (ClosedByInterruptException) for good. It finishes the batch in hand and exits.
+    public void stop() {
+        stopped = true;
+        queue.add(WAKE);
+    }
+
+    // the future completes with the apply result ("OK", "CAS_FAILED") once the command is applied,
+    // or "NOT_LEADER:<id>" if it can't be proposed
+    public CompletableFuture<String> submit(Command command) {
+        Proposal p = new Proposal(command.encode()); // encoded once, on the caller's thread
+        queue.add(p);
+        return p.result;
+    }
+
+    private void run() {
+        while (!stopped) {
+            List<Proposal> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    if (batch.size() >= maxBatch) break;
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) break;
+                    Proposal next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                if (batch.remove(WAKE)) {
+                    for (Proposal p : batch) p.result.complete("error: node stopped");
+                    return;
+                }
+                node.proposeBatch(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.out.println("proposal batch failed: " + e.getMessage());
+                for (Proposal p : batch) p.result.complete("error: " + e.getMessage());
+            }
+        }
+    }
+}
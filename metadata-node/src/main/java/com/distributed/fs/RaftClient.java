@@ -1,69 +1,191 @@
 package com.distributed.fs;
 
-import com.google.gson.Gson;
-
-import java.io.InputStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
 
-public class RaftClient {
-    private final Gson gson = new Gson();
+// Outbound Raft RPCs over HTTP, the RaftTransport every real deployment uses. One shared
+// HttpClient keeps HTTP/1.1 connections to each peer alive between calls, so a heartbeat is one
+// request on an open socket rather than a new TCP handshake. Each peer gets at most
+// rpcMaxConcurrentPerPeer calls in flight; beyond that (or after the configured timeouts) a call
+// fails fast and returns null like an unreachable peer.
+//
+// Bodies of at least rpcCompressMinBytes (in practice catch-up AppendEntries and snapshot
+// chunks) are sent deflated once the peer has said it accepts that: RaftHttpServer lists
+// "deflate" in the Accept-Encoding header of its replies (RFC 7694). Until a peer has answered
+// once, or if it never says so (an older node), it gets plain bodies.
+public class RaftClient implements RaftTransport {
+    private final RaftCodec codec;
+    private final HttpClient http;
+    private final Duration requestTimeout;
+    private final int maxConcurrentPerPeer;
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final int compressMinBytes;
+    private final Set<String> deflatePeers = ConcurrentHashMap.newKeySet(); // peers that accept deflated bodies
+    private final LongAdder bodyBytes = new LongAdder(); // request bodies as encoded
+    private final LongAdder wireBytes = new LongAdder(); // the same bodies as sent, after any compression
 
-    public RpcModels.RequestVoteResponse requestVote(String peer, RpcModels.RequestVoteRequest req) {
-        try {
-            URL url = new URL("http://" + peer + "/requestVote");
-            HttpURLConnection con = (HttpURLConnection) url.openConnection();
-            con.setRequestMethod("POST");
-            con.setDoOutput(true);
-            con.setRequestProperty("Content-Type", "application/json");
-            String body = gson.toJson(req);
-            try (OutputStream os = con.getOutputStream()) { os.write(body.getBytes()); }
-            try (InputStreamReader reader = new InputStreamReader(con.getInputStream())) {
-                return gson.fromJson(reader, RpcModels.RequestVoteResponse.class);
+    // Encode and compress buffers are borrowed for one call (send() blocks until the body has
+    // been written) from a small shared pool, not kept per thread: with virtual threads every RPC
+    // runs on a new thread, and a per-thread Deflater would hold native memory until GC found it.
+    // A call that finds the pool empty makes its own; whatever doesn't fit back is ended.
+    private static final int POOLED_BODIES = 8;
+    private static final int MAX_POOLED_BODY_BYTES = 2 * 1024 * 1024; // a full catch-up batch or snapshot chunk
+    private final ArrayBlockingQueue<Body> bodies = new ArrayBlockingQueue<>(POOLED_BODIES);
+
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+        byte[] bytes() { return buf; }
+        int capacity() { return buf.length; }
+    }
+
+    private static final class Body {
+        final BodyBuffer encoded = new BodyBuffer();
+        final BodyBuffer deflated = new BodyBuffer();
+        final byte[] chunk = new byte[8192];
+        Deflater deflater; // created on first use; fastest level, as catch-up batches are repetitive anyway
+
+        // deflates encoded into deflated
+        BodyBuffer deflate() {
+            if (deflater == null) deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.reset();
+            deflater.setInput(encoded.bytes(), 0, encoded.size());
+            deflater.finish();
+            deflated.reset();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                deflated.write(chunk, 0, n);
             }
-        } catch (Exception e) {
-            // peer unreachable -> treat as no response
-            return null;
+            return deflated;
+        }
+
+        void end() {
+            if (deflater != null) deflater.end();
         }
     }
 
-    public RpcModels.AppendEntriesResponse appendEntries(String peer, RpcModels.AppendEntriesRequest req) {
+    public RaftClient() {
+        this(new RaftOptions());
+    }
+
+    public RaftClient(RaftOptions options) {
+        this.codec = RaftCodec.named(options.rpcCodec);
+        this.requestTimeout = Duration.ofMillis(options.rpcRequestTimeoutMs);
+        this.maxConcurrentPerPeer = options.rpcMaxConcurrentPerPeer;
+        this.compressMinBytes = options.rpcCompressMinBytes;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1) // com.sun HttpServer speaks HTTP/1.1 only
+                .connectTimeout(Duration.ofMillis(options.rpcConnectTimeoutMs))
+                .build();
+    }
+
+    // group 0 is addressed without a query string so single-group clusters talk exactly as before
+    @Override
+    public RpcModels.RequestVoteResponse requestVote(String peer, int group, RpcModels.RequestVoteRequest req) {
+        return post(peer, groupPath("/requestVote", group), req, RpcModels.RequestVoteResponse.class);
+    }
+
+    @Override
+    public RpcModels.AppendEntriesResponse appendEntries(String peer, int group, RpcModels.AppendEntriesRequest req) {
+        return post(peer, groupPath("/appendEntries", group), req, RpcModels.AppendEntriesResponse.class);
+    }
+
+    @Override
+    public RpcModels.InstallSnapshotResponse installSnapshot(String peer, int group, RpcModels.InstallSnapshotRequest req) {
+        return post(peer, groupPath("/installSnapshot", group), req, RpcModels.InstallSnapshotResponse.class);
+    }
+
+    @Override
+    public RpcModels.TimeoutNowResponse timeoutNow(String peer, int group, RpcModels.TimeoutNowRequest req) {
+        return post(peer, groupPath("/timeoutNow", group), req, RpcModels.TimeoutNowResponse.class);
+    }
+
+    public RpcModels.ReadIndexResponse readIndex(String peer, int group, RpcModels.ReadIndexRequest req) {
+        return post(peer, groupPath("/readIndex", group), req, RpcModels.ReadIndexResponse.class);
+    }
+
+    @Override
+    public RpcModels.HeartbeatResponse heartbeat(String peer, RpcModels.HeartbeatRequest req) {
+        return post(peer, "/heartbeat", req, RpcModels.HeartbeatResponse.class);
+    }
+
+    private static String groupPath(String path, int group) {
+        return group == 0 ? path : path + "?group=" + group;
+    }
+
+    // total RPC request body bytes, as encoded and as actually sent
+    public long bodyBytes() { return bodyBytes.sum(); }
+    public long wireBytes() { return wireBytes.sum(); }
+
+    // POST req in the cluster's codec and parse the reply; null if the peer is unreachable
+    private <T> T post(String peer, String path, Object req, Class<T> respType) {
+        Semaphore slots = permits.computeIfAbsent(peer, p -> new Semaphore(maxConcurrentPerPeer));
+        boolean acquired = false;
+        Body borrowed = null;
         try {
-            URL url = new URL("http://" + peer + "/appendEntries");
-            HttpURLConnection con = (HttpURLConnection) url.openConnection();
-            con.setRequestMethod("POST");
-            con.setDoOutput(true);
-            con.setRequestProperty("Content-Type", "application/json");
-            String body = gson.toJson(req);
-            try (OutputStream os = con.getOutputStream()) {
-                os.write(body.getBytes());
-                os.flush();}
-            try (InputStreamReader reader = new InputStreamReader(con.getInputStream())) {
-                return gson.fromJson(reader, RpcModels.AppendEntriesResponse.class);
+            acquired = slots.tryAcquire(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!acquired) return null; // peer is backed up, don't pile more work on it
+            borrowed = borrowBody();
+            BodyBuffer body = borrowed.encoded;
+            codec.encode(req, body);
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://" + peer + path))
+                    .timeout(requestTimeout)
+                    .header("Content-Type", codec.contentType());
+            BodyBuffer sent = body;
+            if (compressMinBytes > 0 && body.size() >= compressMinBytes && deflatePeers.contains(peer)) {
+                BodyBuffer deflated = borrowed.deflate();
+                if (deflated.size() < body.size()) {
+                    sent = deflated;
+                    request.header("Content-Encoding", "deflate");
+                }
             }
+            bodyBytes.add(body.size());
+            wireBytes.add(sent.size());
+            request.POST(HttpRequest.BodyPublishers.ofByteArray(sent.bytes(), 0, sent.size()));
+            HttpResponse<InputStream> resp = http.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            if (compressMinBytes > 0 && resp.headers().firstValue("Accept-Encoding").orElse("").contains("deflate")) {
+                deflatePeers.add(peer);
+            }
+            try (InputStream in = resp.body()) {
+                T decoded = resp.statusCode() == 200 ? codec.decode(in, respType) : null;
+                // closing a body that hasn't hit EOF makes HttpClient drop the connection
+                // instead of returning it to the pool, so read whatever is left first
+                in.transferTo(OutputStream.nullOutputStream());
+                return decoded;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
+            // peer unreachable or timed out -> treat as no response
             return null;
+        } finally {
+            if (acquired) slots.release();
+            if (borrowed != null) returnBody(borrowed);
         }
     }
 
-    public String forwardClientPut(String peer, String key, String value) {
-        try {
-            URL url = new URL("http://" + peer + "/client/put");
-            HttpURLConnection con = (HttpURLConnection) url.openConnection();
-            con.setRequestMethod("POST");
-            con.setDoOutput(true);
-            String body = "key=" + key + "&value=" + value;
-            con.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-            try (OutputStream os = con.getOutputStream()) { os.write(body.getBytes()); }
-            try (InputStreamReader reader = new InputStreamReader(con.getInputStream())) {
-                StringBuilder sb = new StringBuilder();
-                int c;
-                while ((c = reader.read()) != -1) sb.append((char) c);
-                return sb.toString();
-            }
-        } catch (Exception e) {
-            return "error: " + e.getMessage();
-        }
+    private Body borrowBody() {
+        Body b = bodies.poll();
+        if (b == null) return new Body();
+        b.encoded.reset();
+        return b;
+    }
+
+    private void returnBody(Body b) {
+        boolean small = b.encoded.capacity() <= MAX_POOLED_BODY_BYTES && b.deflated.capacity() <= MAX_POOLED_BODY_BYTES;
+        if (!small || !bodies.offer(b)) b.end();
     }
 }
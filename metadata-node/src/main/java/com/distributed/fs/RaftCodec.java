@@ -0,0 +1,31 @@
+package com.distributed.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Wire format for the Raft RPC bodies. The client picks one per cluster (--rpc-codec); the
+// server answers in whatever format the request's Content-Type says, so both can be mixed
+// during a rolling switch.
+public interface RaftCodec {
+    String contentType();
+
+    void encode(Object msg, OutputStream out) throws IOException;
+
+    <T> T decode(InputStream in, Class<T> type) throws IOException;
+
+    // the message is over the size the decoder was told to accept
+    class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public TooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    static RaftCodec named(String name) {
+        if ("binary".equalsIgnoreCase(name)) return new BinaryRaftCodec();
+        if ("json".equalsIgnoreCase(name)) return new JsonRaftCodec();
+        throw new IllegalArgumentException("unknown rpc codec: " + name);
+    }
+}
@@ -0,0 +1,123 @@
+package com.distributed.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Hosts options.groups independent Raft groups in one process (Multi-Raft). Keys are
+// hash-partitioned across the groups, so each group's leader only orders the writes for its
+// share of the keyspace and leadership spreads over the members instead of one node taking
+// every write. All groups share the HTTP port, the RaftClient's pooled connections and one
+// heartbeat per peer every HEARTBEAT_INTERVAL_MS that carries a (group, term, commit) triple for
+// each group we lead, instead of one AppendEntries per group.
+//
+// With groups=1 this is just a single RaftNode, exactly as before.
+public class RaftGroups {
+    private final String nodeId;
+    private final int port;
+    private final RaftOptions options;
+    private final RaftClient client;
+    private final List<RaftNode> groups = new ArrayList<>();
+    // only with several groups: a single RaftNode runs its own server and heartbeats
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService rpcExecutor; // shared heartbeats
+    private RaftHttpServer http;
+
+    public RaftGroups(String nodeId, List<String> peers, int port, RaftOptions options) throws IOException {
+        if (options.groups < 1) throw new IllegalArgumentException("--groups must be at least 1");
+        this.nodeId = nodeId;
+        this.port = port;
+        this.options = options;
+        this.client = new RaftClient(options);
+        for (int g = 0; g < options.groups; g++) {
+            groups.add(new RaftNode(nodeId, peers, port, g, client, options));
+        }
+        if (options.groups == 1) {
+            this.executor = null;
+            this.scheduler = null;
+            this.rpcExecutor = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.rpcExecutor = options.virtualThreads ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        this.executor = options.virtualThreads ? Executors.newCachedThreadPool() // see RaftNode
+                : Executors.newFixedThreadPool(8 * options.groups);
+    }
+
+    // the group that owns key; every node must agree, hence the fixed --groups
+    static int groupOf(String key, int groupCount) {
+        return Math.floorMod(key.hashCode(), groupCount);
+    }
+
+    public List<RaftNode> groups() {
+        return groups;
+    }
+
+    public void start() throws Exception {
+        if (groups.size() == 1) {
+            groups.get(0).start();
+            return;
+        }
+        for (RaftNode node : groups) node.startGroup();
+        http = new RaftHttpServer(groups, port, executor);
+        http.start();
+        System.out.println(nodeId + " hosting " + groups.size() + " raft groups");
+        scheduler.scheduleAtFixedRate(this::sendHeartbeats, 0, RaftNode.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() throws IOException {
+        if (groups.size() == 1) {
+            groups.get(0).stop();
+            return;
+        }
+        scheduler.shutdown();
+        rpcExecutor.shutdown();
+        if (http != null) http.stop();
+        for (RaftNode node : groups) node.stop();
+        executor.shutdown();
+    }
+
+    // a shared heartbeat arrived: each group it names acknowledges its part
+    static RpcModels.HeartbeatResponse onHeartbeat(List<RaftNode> groups, RpcModels.HeartbeatRequest req) {
+        RpcModels.HeartbeatResponse resp = new RpcModels.HeartbeatResponse();
+        resp.groups = new ArrayList<>(req.groups.size());
+        for (RpcModels.GroupHeartbeat hb : req.groups) {
+            if (hb.group < 0 || hb.group >= groups.size()) continue;
+            resp.groups.add(groups.get(hb.group).onGroupHeartbeat(req.leaderId, hb));
+        }
+        return resp;
+    }
+
+    // one request per peer covering every group we currently lead
+    private void sendHeartbeats() {
+        // groups change membership independently, so heartbeat everyone that is a member of any
+        Set<String> targets = new LinkedHashSet<>();
+        for (RaftNode node : groups) targets.addAll(node.peers());
+        for (String peer : targets) {
+            RpcModels.HeartbeatRequest req = new RpcModels.HeartbeatRequest();
+            req.leaderId = nodeId;
+            req.groups = new ArrayList<>();
+            for (RaftNode node : groups) {
+                RpcModels.GroupHeartbeat hb = node.heartbeatFor(peer);
+                if (hb != null) req.groups.add(hb);
+            }
+            if (req.groups.isEmpty()) continue;
+            rpcExecutor.execute(() -> {
+                long sentAt = System.nanoTime();
+                RpcModels.HeartbeatResponse resp = client.heartbeat(peer, req);
+                if (resp == null || resp.groups == null) return;
+                for (RpcModels.GroupHeartbeatAck ack : resp.groups) {
+                    if (ack.group >= 0 && ack.group < groups.size()) groups.get(ack.group).onHeartbeatAck(peer, ack, sentAt);
+                }
+            });
+        }
+    }
+}
@@ -1,30 +1,78 @@
 package com.distributed.fs;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import java.util.stream.Collectors;
 
+// Serves the Raft RPCs and the client API for every Raft group in the process. Raft RPCs name
+// their group with ?group=<id> (absent = 0); client requests are routed to the group owning the key.
 public class RaftHttpServer {
-    private final RaftNode node;
+    private final List<RaftNode> groups;
     private final HttpServer server;
-    private final Gson gson = new Gson();
-    private final Map<String, Integer> lastLoggedAppendIndex = new HashMap<>();
+    private final Executor executor; // also answers watches that completed off a handler thread
+    private final long maxRequestBytes;
+    private final RaftCodec jsonCodec = new JsonRaftCodec();
+    private final RaftCodec binaryCodec;
+    private final Map<String, Integer> lastLoggedAppendIndex = new ConcurrentHashMap<>(); // handlers run concurrently
+    private static final Gson GSON = new Gson();
+    private static final int DEFAULT_LIST_LIMIT = 100;
+    private static final int MAX_LIST_LIMIT = 1000;
+    private static final int MAX_BATCH_OPS = 10000;
+    private static final long MEMBERSHIP_TIMEOUT_MS = 10000; // a new learner may need a whole snapshot first
+    private static final long DEFAULT_WATCH_TIMEOUT_MS = 30000;
+    private static final long MAX_WATCH_TIMEOUT_MS = 300000;
 
 
+    static {
+        // The server writes response headers and body separately; with Nagle on, the body waits for
+        // the client's delayed ACK of the headers, adding ~40ms to every RPC round trip.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
     public RaftHttpServer(RaftNode node, int port) throws IOException {
-        this.node = node;
+        this(List.of(node), port, node.getExecutor()); // share executor
+    }
+
+    public RaftHttpServer(List<RaftNode> groups, int port, Executor executor) throws IOException {
+        this.groups = groups;
+        this.executor = executor;
+        this.maxRequestBytes = groups.get(0).options().rpcMaxRequestBytes;
+        this.binaryCodec = new BinaryRaftCodec((int) Math.min(maxRequestBytes, Integer.MAX_VALUE));
         server = HttpServer.create(new InetSocketAddress(port), 0);
         server.createContext("/requestVote", this::handleRequestVote);
         server.createContext("/appendEntries", this::handleAppendEntries);
+        server.createContext("/installSnapshot", this::handleInstallSnapshot);
+        server.createContext("/heartbeat", this::handleHeartbeat);
+        server.createContext("/timeoutNow", this::handleTimeoutNow);
+        server.createContext("/readIndex", this::handleReadIndex);
+        server.createContext("/admin/transfer-leader", this::handleTransferLeader);
+        server.createContext("/admin/members", this::handleMembers);
         server.createContext("/client/put", this::handleClientPut);
+        server.createContext("/client/delete", this::handleClientDelete);
+        server.createContext("/client/cas", this::handleClientCas);
         server.createContext("/client/get", this::handleClientGet);
-        server.setExecutor(node.getExecutor()); // share executor
+        server.createContext("/client/list", this::handleClientList);
+        server.createContext("/client/batch/put", this::handleBatchPut);
+        server.createContext("/client/batch/get", this::handleBatchGet);
+        server.createContext("/client/watch", this::handleWatch);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(executor);
     }
 
     public void start() {
@@ -32,57 +80,488 @@ public class RaftHttpServer {
         System.out.println("HTTP server started on port " + server.getAddress().getPort());
     }
 
+    public void stop() {
+        server.stop(0);
+    }
+
+    // the group a Raft RPC is addressed to, or null (after answering 404) if we don't host it
+    private RaftNode groupOf(HttpExchange exchange) throws IOException {
+        String g = parseForm(exchange.getRequestURI().getQuery()).get("group");
+        int id = 0;
+        try {
+            if (g != null) id = Integer.parseInt(g);
+        } catch (NumberFormatException e) {
+            id = -1;
+        }
+        if (id < 0 || id >= groups.size()) {
+            exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+            byte[] msg = ("unknown raft group " + g).getBytes();
+            exchange.sendResponseHeaders(404, msg.length);
+            try (OutputStream os = exchange.getResponseBody()) { os.write(msg); }
+            return null;
+        }
+        return groups.get(id);
+    }
+
+    private RaftNode groupForKey(String key) {
+        return groups.get(RaftGroups.groupOf(key, groups.size()));
+    }
+
     private void handleRequestVote(HttpExchange exchange) throws IOException {
-        RpcModels.RequestVoteRequest req = gson.fromJson(new InputStreamReader(exchange.getRequestBody()), RpcModels.RequestVoteRequest.class);
+        RaftNode node = groupOf(exchange);
+        if (node == null) return;
+        RaftCodec codec = codecFor(exchange);
+        RpcModels.RequestVoteRequest req = decodeRpc(exchange, codec, RpcModels.RequestVoteRequest.class);
+        if (req == null) return;
         RpcModels.RequestVoteResponse resp = node.onRequestVote(req);
-        sendJson(exchange, resp);
+        sendRpc(exchange, codec, resp);
     }
 
     private void handleAppendEntries(HttpExchange exchange) throws IOException {
-        RpcModels.AppendEntriesRequest req = gson.fromJson(
-                new InputStreamReader(exchange.getRequestBody()), RpcModels.AppendEntriesRequest.class);
+        RaftNode node = groupOf(exchange);
+        if (node == null) return;
+        RaftCodec codec = codecFor(exchange);
+        RpcModels.AppendEntriesRequest req = decodeRpc(exchange, codec, RpcModels.AppendEntriesRequest.class);
+        if (req == null) return;
 
         // Log only if new entries beyond last logged index
         if (!req.entries.isEmpty()) {
             int lastIndex = req.prevLogIndex + req.entries.size();
-            int prevLogged = lastLoggedAppendIndex.getOrDefault(node.getNodeId(), 0);
+            int prevLogged = lastLoggedAppendIndex.getOrDefault(node.name(), 0);
             if (lastIndex > prevLogged) {
                 System.out.println("Received AppendEntries with " + req.entries.size() +
-                        " entries on " + node.getNodeId());
-                lastLoggedAppendIndex.put(node.getNodeId(), lastIndex);
+                        " entries on " + node.name());
+                lastLoggedAppendIndex.put(node.name(), lastIndex);
             }
         }
 
         RpcModels.AppendEntriesResponse resp = node.onAppendEntries(req);
-        sendJson(exchange, resp);
+        sendRpc(exchange, codec, resp);
+    }
+
+    private void handleInstallSnapshot(HttpExchange exchange) throws IOException {
+        RaftNode node = groupOf(exchange);
+        if (node == null) return;
+        RaftCodec codec = codecFor(exchange);
+        RpcModels.InstallSnapshotRequest req = decodeRpc(exchange, codec, RpcModels.InstallSnapshotRequest.class);
+        if (req == null) return;
+        RpcModels.InstallSnapshotResponse resp = node.onInstallSnapshot(req);
+        sendRpc(exchange, codec, resp);
+    }
+
+    private void handleTimeoutNow(HttpExchange exchange) throws IOException {
+        RaftNode node = groupOf(exchange);
+        if (node == null) return;
+        RaftCodec codec = codecFor(exchange);
+        RpcModels.TimeoutNowRequest req = decodeRpc(exchange, codec, RpcModels.TimeoutNowRequest.class);
+        if (req == null) return;
+        sendRpc(exchange, codec, node.onTimeoutNow(req));
+    }
+
+    private void handleReadIndex(HttpExchange exchange) throws IOException {
+        RaftNode node = groupOf(exchange);
+        if (node == null) return;
+        RaftCodec codec = codecFor(exchange);
+        RpcModels.ReadIndexRequest req = decodeRpc(exchange, codec, RpcModels.ReadIndexRequest.class);
+        if (req == null) return;
+        sendRpc(exchange, codec, node.onReadIndex(req));
+    }
+
+    // POST /admin/transfer-leader[?group=N], form body [to=host:port][&timeout_ms=...]: hand this
+    // group's leadership to `to` (default: the most caught-up follower) before restarting this
+    // node. Answers OK:<new leader>, NOT_LEADER:<leader> or error: ...
+    private void handleTransferLeader(HttpExchange exchange) throws IOException {
+        RaftNode node = groupOf(exchange);
+        if (node == null) return;
+        String body = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))
+                .lines().collect(Collectors.joining("\n"));
+        Map<String, String> params = parseForm(body);
+        String timeout = params.get("timeout_ms");
+        String result;
+        try {
+            // by default give up after about what an ordinary failover would have taken
+            long timeoutMs = timeout == null ? RaftNode.ELECTION_TIMEOUT_MIN_MS + RaftNode.ELECTION_TIMEOUT_RANGE_MS
+                    : Long.parseLong(timeout);
+            result = node.transferLeadership(params.get("to"), timeoutMs);
+        } catch (NumberFormatException e) {
+            result = "error: bad timeout_ms";
+        }
+        sendText(exchange, result);
+    }
+
+    // GET /admin/members[?group=N]: the group's configuration as this node sees it (plus each
+    // member's matchIndex on the leader).
+    // POST, form body action=add-learner|promote|remove&node=host:port[&timeout_ms=...]: change it,
+    // on the leader. To add a node: start it with --join, add-learner, then promote once it is caught up
+    // (promote itself waits up to timeout_ms for that).
+    private void handleMembers(HttpExchange exchange) throws IOException {
+        RaftNode node = groupOf(exchange);
+        if (node == null) return;
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendText(exchange, node.membership());
+            return;
+        }
+        String body = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))
+                .lines().collect(Collectors.joining("\n"));
+        Map<String, String> params = parseForm(body);
+        String action = params.get("action");
+        String member = params.get("node");
+        String timeout = params.get("timeout_ms");
+        String result;
+        if (action == null || member == null) {
+            result = "error: missing action or node";
+        } else {
+            try {
+                result = node.changeMembership(action, member, timeout == null ? MEMBERSHIP_TIMEOUT_MS : Long.parseLong(timeout));
+            } catch (NumberFormatException e) {
+                result = "error: bad timeout_ms";
+            }
+        }
+        sendText(exchange, result);
     }
 
+    // shared heartbeat from a leader of one or more of our groups (RaftGroups)
+    private void handleHeartbeat(HttpExchange exchange) throws IOException {
+        RaftCodec codec = codecFor(exchange);
+        RpcModels.HeartbeatRequest req = decodeRpc(exchange, codec, RpcModels.HeartbeatRequest.class);
+        if (req == null) return;
+        sendRpc(exchange, codec, RaftGroups.onHeartbeat(groups, req));
+    }
 
+    // answer in whichever codec the peer spoke to us
+    private RaftCodec codecFor(HttpExchange exchange) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return contentType != null && contentType.startsWith(BinaryRaftCodec.CONTENT_TYPE) ? binaryCodec : jsonCodec;
+    }
 
     private void handleClientPut(HttpExchange exchange) throws IOException {
-        // form body: key=...&value=...
+        // form body: key=...&value=...[&timeout_ms=...] (default --put-timeout-ms)
+        handleClientWrite(exchange, p -> p.get("value") == null ? null : Command.put(p.get("key"), p.get("value")));
+    }
+
+    private void handleClientDelete(HttpExchange exchange) throws IOException {
+        // form body: key=...[&timeout_ms=...]
+        handleClientWrite(exchange, p -> Command.delete(p.get("key")));
+    }
+
+    private void handleClientCas(HttpExchange exchange) throws IOException {
+        // form body: key=...&value=...[&expected=...][&timeout_ms=...]; no expected = key must be absent.
+        // Answers OK or CAS_FAILED
+        handleClientWrite(exchange, p -> p.get("value") == null ? null : Command.cas(p.get("key"), p.get("expected"), p.get("value")));
+    }
+
+    // command builds the Command from the form, or returns null if a field it needs is missing
+    private void handleClientWrite(HttpExchange exchange, Function<Map<String, String>, Command> command) throws IOException {
         String body = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))
                 .lines().collect(Collectors.joining("\n"));
         Map<String, String> params = parseForm(body);
         String key = params.get("key");
-        String value = params.get("value");
-        String result = node.clientPut(key, value);
+        String timeout = params.get("timeout_ms");
+        Command c = key == null ? null : command.apply(params);
+        if (c == null) {
+            sendText(exchange, "error: missing key or value");
+            return;
+        }
+        String result;
+        try {
+            RaftNode node = groupForKey(key);
+            long timeoutMs = timeout == null ? node.options().putTimeoutMs : Long.parseLong(timeout);
+            result = node.clientWrite(c, timeoutMs);
+        } catch (NumberFormatException e) {
+            result = "error: bad timeout_ms";
+        }
         sendText(exchange, result);
     }
 
+    // query: key=...[&max_lag_entries=N][&max_stale_ms=M]. Without a staleness bound the read is
+    // linearizable and only the leader serves it; with one, any member within the bound answers.
     private void handleClientGet(HttpExchange exchange) throws IOException {
         URI uri = exchange.getRequestURI();
-        String query = uri.getQuery(); // key=...
-        String key = null;
-        if (query != null) {
-            for (String part : query.split("&")) {
-                String[] kv = part.split("=");
-                if (kv.length == 2 && kv[0].equals("key")) key = kv[1];
+        Map<String, String> params = parseForm(uri.getQuery());
+        String key = params.get("key");
+        String maxLag = params.get("max_lag_entries");
+        String maxStale = params.get("max_stale_ms");
+        if (key == null || key.isBlank()) {
+            sendText(exchange, "error: missing key");
+            return;
+        }
+        String result;
+        RaftNode node = groupForKey(key);
+        if (maxLag == null && maxStale == null) {
+            result = node.clientGet(key);
+        } else {
+            try {
+                result = node.clientGetBounded(key,
+                        maxLag == null ? -1 : Long.parseLong(maxLag),
+                        maxStale == null ? -1 : Long.parseLong(maxStale));
+            } catch (NumberFormatException e) {
+                result = "error: bad staleness bound";
+            }
+        }
+        sendText(exchange, result);
+    }
+
+    // GET /client/list?prefix=/dir/&limit=100[&cursor=...] or ?from=a&to=b (either end optional).
+    // Answers {"entries":[{"key":..,"value":..},...],"next_cursor":".."}; next_cursor is present
+    // only when more keys follow and is passed back as cursor= for the next page. Reads are
+    // linearizable unless max_lag_entries / max_stale_ms are given, as for /client/get, but any
+    // member answers: for a group it doesn't lead it gets a read index from that group's leader.
+    private void handleClientList(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseForm(exchange.getRequestURI().getQuery());
+        int limit;
+        long maxLag;
+        long maxStale;
+        try {
+            limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_LIST_LIMIT;
+            maxLag = params.containsKey("max_lag_entries") ? Long.parseLong(params.get("max_lag_entries")) : -1;
+            maxStale = params.containsKey("max_stale_ms") ? Long.parseLong(params.get("max_stale_ms")) : -1;
+        } catch (NumberFormatException e) {
+            sendText(exchange, "error: bad limit or staleness bound");
+            return;
+        }
+        if (limit < 1 || limit > MAX_LIST_LIMIT) {
+            sendText(exchange, "error: limit must be between 1 and " + MAX_LIST_LIMIT);
+            return;
+        }
+        String after;
+        try {
+            after = params.containsKey("cursor") ? new String(Base64.getUrlDecoder().decode(params.get("cursor")), StandardCharsets.UTF_8) : null;
+        } catch (IllegalArgumentException e) {
+            sendText(exchange, "error: bad cursor");
+            return;
+        }
+        // keys are hash-partitioned, so every group holds part of any range: merge their pages
+        List<MetadataStateMachine.ListEntry> merged = new ArrayList<>();
+        boolean more = false;
+        for (RaftNode node : groups) {
+            MetadataStateMachine.ListPage page = node.clientList(params.get("prefix"), params.get("from"), params.get("to"),
+                    after, limit, maxLag, maxStale);
+            if (page.error != null) {
+                sendText(exchange, page.error);
+                return;
+            }
+            merged.addAll(page.entries);
+            more |= page.lastKey != null;
+        }
+        if (groups.size() > 1) merged.sort(Comparator.comparing(e -> e.key));
+        if (merged.size() > limit) {
+            merged = merged.subList(0, limit);
+            more = true;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("entries", toJson(merged));
+        if (more) {
+            String last = merged.get(merged.size() - 1).key;
+            body.put("next_cursor", Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8)));
+        }
+        sendJson(exchange, body);
+    }
+
+    // JSON bodies of the batch endpoints
+    private static class BatchOp {
+        String op; // put, delete or cas
+        String key;
+        String value;
+        String expected; // cas: absent = the key must not exist
+    }
+
+    private static class BatchPutRequest {
+        List<BatchOp> ops;
+        Long timeout_ms;
+    }
+
+    private static class BatchGetRequest {
+        List<String> keys;
+        Long max_lag_entries;
+        Long max_stale_ms;
+    }
+
+    // POST /client/batch/put {"ops":[{"op":"put","key":..,"value":..},{"op":"delete","key":..},
+    // {"op":"cas","key":..,"expected":..,"value":..},...][,"timeout_ms":N]}
+    // The whole batch is one BATCH log entry: it applies atomically, and answers OK, or
+    // CAS_FAILED (nothing applied) if any cas didn't match. With --groups > 1 every key must hash
+    // to the same group (RaftGroups.groupOf), since one entry can only commit in one group.
+    private void handleBatchPut(HttpExchange exchange) throws IOException {
+        BatchPutRequest req;
+        try {
+            req = GSON.fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), BatchPutRequest.class);
+        } catch (JsonParseException e) {
+            sendText(exchange, "error: bad batch body");
+            return;
+        }
+        if (req == null || req.ops == null || req.ops.isEmpty() || req.ops.size() > MAX_BATCH_OPS) {
+            sendText(exchange, "error: batch needs 1 to " + MAX_BATCH_OPS + " ops");
+            return;
+        }
+        List<Command> ops = new ArrayList<>(req.ops.size());
+        int group = -1;
+        for (BatchOp op : req.ops) {
+            Command c = op == null || op.key == null ? null : switch (String.valueOf(op.op)) {
+                case "put" -> op.value == null ? null : Command.put(op.key, op.value);
+                case "delete" -> Command.delete(op.key);
+                case "cas" -> op.value == null ? null : Command.cas(op.key, op.expected, op.value);
+                default -> null;
+            };
+            if (c == null) {
+                sendText(exchange, "error: bad op " + GSON.toJson(op));
+                return;
+            }
+            int g = RaftGroups.groupOf(op.key, groups.size());
+            if (group >= 0 && g != group) {
+                sendText(exchange, "error: batch spans raft groups " + group + " and " + g + ", send one batch per group");
+                return;
             }
+            group = g;
+            ops.add(c);
+        }
+        RaftNode node = groups.get(group);
+        long timeoutMs = req.timeout_ms == null ? node.options().putTimeoutMs : req.timeout_ms;
+        sendText(exchange, node.clientWrite(Command.batch(ops), timeoutMs));
+    }
+
+    // POST /client/batch/get {"keys":[..][,"max_lag_entries":N][,"max_stale_ms":M]}
+    // Answers {"entries":[{"key":..,"value":..},...]} in request order, without "value" for a
+    // missing key. Each group's keys are read in one pass, as of a single applied index, behind a
+    // single read barrier; consistency as for /client/list, so any member answers.
+    private void handleBatchGet(HttpExchange exchange) throws IOException {
+        BatchGetRequest req;
+        try {
+            req = GSON.fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), BatchGetRequest.class);
+        } catch (JsonParseException e) {
+            sendText(exchange, "error: bad batch body");
+            return;
+        }
+        if (req == null || req.keys == null || req.keys.isEmpty() || req.keys.size() > MAX_BATCH_OPS || req.keys.contains(null)) {
+            sendText(exchange, "error: batch needs 1 to " + MAX_BATCH_OPS + " keys");
+            return;
+        }
+        long maxLag = req.max_lag_entries == null ? -1 : req.max_lag_entries;
+        long maxStale = req.max_stale_ms == null ? -1 : req.max_stale_ms;
+        List<MetadataStateMachine.ListEntry> result;
+        if (groups.size() == 1) {
+            MetadataStateMachine.ListPage page = groups.get(0).clientGetAll(req.keys, maxLag, maxStale);
+            if (page.error != null) {
+                sendText(exchange, page.error);
+                return;
+            }
+            result = page.entries;
+        } else {
+            // read each group's share of the keys, then put the answers back in request order
+            Map<Integer, List<String>> byGroup = new TreeMap<>();
+            for (String key : req.keys) byGroup.computeIfAbsent(RaftGroups.groupOf(key, groups.size()), g -> new ArrayList<>()).add(key);
+            Map<String, byte[]> values = new HashMap<>();
+            for (Map.Entry<Integer, List<String>> e : byGroup.entrySet()) {
+                MetadataStateMachine.ListPage page = groups.get(e.getKey()).clientGetAll(e.getValue(), maxLag, maxStale);
+                if (page.error != null) {
+                    sendText(exchange, page.error);
+                    return;
+                }
+                for (MetadataStateMachine.ListEntry entry : page.entries) values.put(entry.key, entry.value);
+            }
+            result = new ArrayList<>(req.keys.size());
+            for (String key : req.keys) result.add(new MetadataStateMachine.ListEntry(key, values.get(key)));
+        }
+        sendJson(exchange, Map.of("entries", toJson(result)));
+    }
+
+    // GET /client/watch?key=/a/b or ?prefix=/a/ (neither: every key)[&from_index=N][&limit=100][&timeout_ms=30000]
+    // Long-poll: answers as soon as this node has applied a change from log index from_index on
+    // (default: the next one), or after timeout_ms with none, as
+    // {"changes":[{"index":..,"key":..,"value":..} or {"index":..,"key":..,"deleted":true},...],"next_index":N};
+    // watch again from next_index. {"resync":true,"next_index":N} means the changes asked for are no
+    // longer buffered (see --watch-buffer-changes): re-read the keys (/client/list), then watch from N.
+    // Indexes belong to one group's log, so with --groups > 1 a prefix watch names its group= and a
+    // client watches each group; a key watch goes to the key's group.
+    private void handleWatch(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseForm(exchange.getRequestURI().getQuery());
+        String key = params.get("key");
+        String prefix = params.get("prefix");
+        RaftNode node;
+        if (key != null) {
+            node = groupForKey(key);
+        } else if (groups.size() > 1 && !params.containsKey("group")) {
+            sendText(exchange, "error: prefix watches need group= when there are " + groups.size() + " groups");
+            return;
+        } else {
+            node = groupOf(exchange);
+            if (node == null) return;
+        }
+        if (!node.watchEnabled()) {
+            sendText(exchange, "error: watches are disabled (--watch-buffer-changes=0)");
+            return;
+        }
+        int fromIndex;
+        int limit;
+        long timeoutMs;
+        try {
+            fromIndex = params.containsKey("from_index") ? Integer.parseInt(params.get("from_index")) : node.lastApplied() + 1;
+            limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_LIST_LIMIT;
+            timeoutMs = params.containsKey("timeout_ms") ? Long.parseLong(params.get("timeout_ms")) : DEFAULT_WATCH_TIMEOUT_MS;
+        } catch (NumberFormatException e) {
+            sendText(exchange, "error: bad from_index, limit or timeout_ms");
+            return;
+        }
+        if (fromIndex < 1 || limit < 1 || limit > MAX_LIST_LIMIT || timeoutMs < 0 || timeoutMs > MAX_WATCH_TIMEOUT_MS) {
+            sendText(exchange, "error: from_index must be positive, limit between 1 and " + MAX_LIST_LIMIT
+                    + ", timeout_ms between 0 and " + MAX_WATCH_TIMEOUT_MS);
+            return;
+        }
+        // the handler thread returns right away; the reply goes out when the watch completes,
+        // and every way it completes must answer or close the exchange, or the watcher hangs
+        node.watch(key, prefix, fromIndex, limit, timeoutMs).whenCompleteAsync((changes, error) -> {
+            try {
+                if (error != null) sendError(exchange, 500, "error: watch failed: " + error);
+                else sendJson(exchange, watchJson(changes));
+            } catch (IOException | RuntimeException e) {
+                exchange.close(); // the watcher went away, or the headers were already out
+            }
+        }, executor);
+    }
+
+    private static Map<String, Object> watchJson(ChangeFeed.Changes changes) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (changes.resync) {
+            body.put("resync", true);
+        } else {
+            List<Map<String, Object>> out = new ArrayList<>(changes.changes.size());
+            for (ChangeFeed.Change c : changes.changes) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("index", c.index);
+                item.put("key", c.key);
+                if (c.value != null) item.put("value", new String(c.value, StandardCharsets.UTF_8));
+                else item.put("deleted", true);
+                out.add(item);
+            }
+            body.put("changes", out);
+        }
+        body.put("next_index", changes.nextIndex);
+        return body;
+    }
+
+    // GET /metrics: counters, latency summaries and gauges for every group, in the Prometheus text format
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        byte[] body = RaftMetrics.render(groups).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) { os.write(body); }
+    }
+
+    private static List<Map<String, String>> toJson(List<MetadataStateMachine.ListEntry> entries) {
+        List<Map<String, String>> out = new ArrayList<>(entries.size());
+        for (MetadataStateMachine.ListEntry e : entries) {
+            Map<String, String> item = new LinkedHashMap<>();
+            item.put("key", e.key);
+            if (e.value != null) item.put("value", new String(e.value, StandardCharsets.UTF_8));
+            out.add(item);
         }
-        String value = node.getMetadata(key);
-        if (value == null) value = "";
-        sendText(exchange, value);
+        return out;
+    }
+
+    private void sendJson(HttpExchange exchange, Object body) throws IOException {
+        byte[] json = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, json.length);
+        try (OutputStream os = exchange.getResponseBody()) { os.write(json); }
     }
 
     private Map<String,String> parseForm(String body) {
@@ -90,17 +569,106 @@ public class RaftHttpServer {
         if (body == null || body.isEmpty()) return map;
         for (String kv : body.split("&")) {
             String[] parts = kv.split("=",2);
-            if (parts.length==2) map.put(parts[0], parts[1]);
+            if (parts.length==2) map.put(URLDecoder.decode(parts[0], StandardCharsets.UTF_8), URLDecoder.decode(parts[1], StandardCharsets.UTF_8));
         }
         return map;
     }
 
-    private void sendJson(HttpExchange exchange, Object obj) throws IOException {
-        String s = gson.toJson(obj);
-        byte[] bytes = s.getBytes();
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) { os.write(bytes); }
+    // a Raft RPC body, inflated if the peer deflated it (see RaftClient) and cut off at
+    // --rpc-max-request-bytes so no peer can make us buffer more; null after answering 400, 413 or
+    // 415. Nothing past the limit is read, not even to discard it: if the body goes on, the
+    // answer closes the connection.
+    private <T> T decodeRpc(HttpExchange exchange, RaftCodec codec, Class<T> type) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        InputStream raw = exchange.getRequestBody();
+        Inflater inflater = null;
+        InputStream in = raw;
+        if ("deflate".equalsIgnoreCase(encoding)) {
+            inflater = new Inflater();
+            in = new InflaterInputStream(raw, inflater);
+        } else if (encoding != null && !"identity".equalsIgnoreCase(encoding)) {
+            sendError(exchange, 415, "unsupported content encoding " + encoding, discard(raw));
+            return null;
+        }
+        LimitedInputStream body = new LimitedInputStream(in, maxRequestBytes);
+        try {
+            return codec.decode(body, type);
+        } catch (IOException | RuntimeException e) { // Gson wraps the stream's IOException
+            if (body.exceeded || e instanceof RaftCodec.TooLargeException) {
+                sendError(exchange, 413, "request body over " + maxRequestBytes + " bytes", false);
+            } else {
+                sendError(exchange, 400, "malformed " + type.getSimpleName() + ": " + e.getMessage(), discard(raw));
+            }
+            return null;
+        } finally {
+            if (inflater != null) inflater.end();
+        }
+    }
+
+    // reads and drops the rest of a refused body, up to the limit; false if it went past it (or
+    // broke off), so the connection can't be reused. Left unread, a short rest would make the
+    // peer see a connection reset instead of our answer.
+    private boolean discard(InputStream raw) {
+        try {
+            new LimitedInputStream(raw, maxRequestBytes).transferTo(OutputStream.nullOutputStream());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+        boolean exceeded;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            remaining -= n;
+            if (remaining < 0) {
+                exceeded = true;
+                throw new IOException("request body too large");
+            }
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendError(exchange, status, message, true);
+    }
+
+    // keepAlive false: the rest of the request is still unread, so close the connection after
+    // answering rather than have the server read it to find the next request
+    private void sendError(HttpExchange exchange, int status, String message, boolean keepAlive) throws IOException {
+        if (!keepAlive) exchange.getResponseHeaders().set("Connection", "close");
+        byte[] msg = message.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, msg.length);
+        try (OutputStream os = exchange.getResponseBody()) { os.write(msg); }
+    }
+
+    private void sendRpc(HttpExchange exchange, RaftCodec codec, Object obj) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        codec.encode(obj, body);
+        exchange.getResponseHeaders().set("Content-Type", codec.contentType());
+        exchange.getResponseHeaders().set("Accept-Encoding", "deflate"); // peers may deflate large requests to us
+        exchange.sendResponseHeaders(200, body.size());
+        try (OutputStream os = exchange.getResponseBody()) { body.writeTo(os); }
     }
 
     private void sendText(HttpExchange exchange, String s) throws IOException {
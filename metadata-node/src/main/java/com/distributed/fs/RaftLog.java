@@ -0,0 +1,179 @@
+package com.distributed.fs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// In-memory Raft log whose prefix may have been replaced by a snapshot.
+// Indexes are Raft indexes (first real entry is 1); snapshotIndex/snapshotTerm stand in for
+// everything that was compacted away. Callers synchronize (RaftNode holds its lock).
+//
+// Entries are not kept as objects: the log is a list of fixed-size chunks, each holding the
+// terms and payload end offsets of CHUNK_ENTRIES entries in int arrays and their payloads back to
+// back in one byte array. A long log is then a few thousand arrays instead of two objects per
+// entry for the GC to trace, truncation only moves an end marker (and drops whole chunks past
+// it), and compaction drops whole chunks from the front. get()/slice() hand out fresh LogEntry
+// copies, which die young.
+//
+// Indexes stay int like the rest of Raft here (RPCs and the WAL record them as 32 bits).
+public class RaftLog {
+    static final int CHUNK_ENTRIES = 4096;
+
+    private static final class Chunk {
+        final int[] terms = new int[CHUNK_ENTRIES];
+        final int[] ends = new int[CHUNK_ENTRIES]; // payload of slot i is data[ends[i-1] .. ends[i])
+        byte[] data;
+        int count; // slots in use
+
+        Chunk(int dataCapacity) {
+            data = new byte[dataCapacity];
+        }
+
+        int start(int slot) { return slot == 0 ? 0 : ends[slot - 1]; }
+
+        void add(int term, byte[] payload) {
+            int from = start(count);
+            if (from + payload.length > data.length) {
+                byte[] bigger = new byte[Math.max(data.length * 2, from + payload.length)];
+                System.arraycopy(data, 0, bigger, 0, from);
+                data = bigger;
+            }
+            System.arraycopy(payload, 0, data, from, payload.length);
+            terms[count] = term;
+            ends[count] = from + payload.length;
+            count++;
+        }
+    }
+
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+    private int base = 1;          // Raft index of slot 0 of chunks.get(0)
+    private int lastIndex = 0;
+    private int snapshotIndex = 0; // last index covered by the snapshot, 0 = no snapshot
+    private int snapshotTerm = 0;
+
+    public int firstIndex() { return snapshotIndex + 1; }
+    public int lastIndex() { return lastIndex; }
+    public int snapshotIndex() { return snapshotIndex; }
+    public int snapshotTerm() { return snapshotTerm; }
+
+    public int lastTerm() {
+        return termAt(lastIndex());
+    }
+
+    // term of the entry at index, or -1 if it is compacted away or past the end
+    public int termAt(int index) {
+        if (index == snapshotIndex) return snapshotTerm;
+        if (index < snapshotIndex || index > lastIndex) return -1;
+        int pos = index - base;
+        return chunks.get(pos / CHUNK_ENTRIES).terms[pos % CHUNK_ENTRIES];
+    }
+
+    // first index of the run of same-term entries that index belongs to (not looking into the
+    // snapshot). Terms never decrease along the log, so this is a binary search.
+    public int firstIndexOfTerm(int index) {
+        int term = termAt(index);
+        int lo = snapshotIndex + 1, hi = index;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (termAt(mid) < term) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // last index holding an entry of term, or 0 if we have none
+    public int lastIndexOfTerm(int term) {
+        // first index past the snapshot with a term above `term`, then step back one
+        int lo = snapshotIndex + 1, hi = lastIndex + 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (termAt(mid) <= term) lo = mid + 1; else hi = mid;
+        }
+        int candidate = lo - 1;
+        if (candidate > snapshotIndex && termAt(candidate) == term) return candidate;
+        return snapshotIndex > 0 && snapshotTerm == term ? snapshotIndex : 0;
+    }
+
+    public LogEntry get(int index) {
+        checkIndex(index);
+        int pos = index - base;
+        Chunk c = chunks.get(pos / CHUNK_ENTRIES);
+        int slot = pos % CHUNK_ENTRIES;
+        int from = c.start(slot);
+        byte[] payload = new byte[c.ends[slot] - from];
+        System.arraycopy(c.data, from, payload, 0, payload.length);
+        return new LogEntry(c.terms[slot], payload);
+    }
+
+    // payload size of the entry at index, without copying it out
+    public int commandSize(int index) {
+        checkIndex(index);
+        int pos = index - base;
+        Chunk c = chunks.get(pos / CHUNK_ENTRIES);
+        int slot = pos % CHUNK_ENTRIES;
+        return c.ends[slot] - c.start(slot);
+    }
+
+    private void checkIndex(int index) {
+        if (index <= snapshotIndex || index > lastIndex) {
+            throw new IndexOutOfBoundsException("log index " + index + " not in [" + firstIndex() + ", " + lastIndex() + "]");
+        }
+    }
+
+    public void append(LogEntry entry) {
+        int pos = lastIndex + 1 - base;
+        if (pos == chunks.size() * CHUNK_ENTRIES) {
+            // size the payload area from the previous chunk, so steady traffic rarely regrows it
+            int capacity = chunks.isEmpty() ? 64 * 1024 : Math.max(1024, chunks.get(chunks.size() - 1).start(CHUNK_ENTRIES));
+            chunks.add(new Chunk(capacity));
+        }
+        chunks.get(pos / CHUNK_ENTRIES).add(entry.term, entry.command);
+        lastIndex++;
+    }
+
+    public void appendAll(List<LogEntry> more) {
+        for (LogEntry e : more) append(e);
+    }
+
+    // entries in [from, toExclusive)
+    public List<LogEntry> slice(int from, int toExclusive) {
+        List<LogEntry> out = new ArrayList<>(Math.max(0, toExclusive - from));
+        for (int i = from; i < toExclusive; i++) out.add(get(i));
+        return out;
+    }
+
+    // drop index and everything after it
+    public void truncateFrom(int index) {
+        if (index > lastIndex) return;
+        index = Math.max(index, snapshotIndex + 1);
+        int pos = index - base;
+        int keepChunks = (pos + CHUNK_ENTRIES - 1) / CHUNK_ENTRIES; // chunks holding a slot before pos
+        while (chunks.size() > Math.max(keepChunks, 0)) chunks.remove(chunks.size() - 1);
+        if (pos % CHUNK_ENTRIES != 0) chunks.get(chunks.size() - 1).count = pos % CHUNK_ENTRIES;
+        lastIndex = index - 1;
+    }
+
+    // forget everything up to and including index, which a snapshot now covers
+    public void compactTo(int index, int term) {
+        if (index <= snapshotIndex) return;
+        if (index >= lastIndex) {
+            reset(index, term);
+            return;
+        }
+        // drop the chunks that now lie entirely inside the snapshot
+        int dropChunks = (index + 1 - base) / CHUNK_ENTRIES;
+        if (dropChunks > 0) {
+            chunks.subList(0, dropChunks).clear();
+            base += dropChunks * CHUNK_ENTRIES;
+        }
+        snapshotIndex = index;
+        snapshotTerm = term;
+    }
+
+    // drop every entry and restart right after an installed snapshot that our log doesn't match
+    public void reset(int index, int term) {
+        chunks.clear();
+        base = index + 1;
+        lastIndex = index;
+        snapshotIndex = index;
+        snapshotTerm = term;
+    }
+}
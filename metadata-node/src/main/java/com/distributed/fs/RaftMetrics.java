@@ -0,0 +1,130 @@
+package com.distributed.fs;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Counters and latency histograms for one Raft group, updated on the hot paths without taking
+// RaftNode's lock, and rendered for GET /metrics in the Prometheus text format. Histograms are
+// exposed as summaries (a few quantiles plus _sum and _count) since LatencyHistogram keeps its
+// own buckets; everything is cumulative since the node started, so rates come from the scraper.
+// Gauges (term, indexes, follower lag) are read from RaftNode when the page is rendered.
+public class RaftMetrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // elections
+    public final LongAdder electionsStarted = new LongAdder();
+    public final LongAdder electionsWon = new LongAdder();
+    public final LongAdder preVotesLost = new LongAdder();
+    public final LongAdder checkQuorumStepDowns = new LongAdder();
+    public final LongAdder leadershipTransfers = new LongAdder();
+
+    // replication (leader side)
+    public final LongAdder appendEntriesFailures = new LongAdder(); // no reply: peer down or timed out
+    public final LongAdder appendEntriesRejections = new LongAdder(); // log mismatch, the replicator backs up
+    public final LatencyHistogram appendEntriesNanos = new LatencyHistogram();
+    public final LatencyHistogram appendEntriesEntries = new LatencyHistogram();
+
+    // client writes (leader side)
+    public final LatencyHistogram proposeToCommitNanos = new LatencyHistogram(); // submit() until a majority has it
+    public final LatencyHistogram commitToApplyNanos = new LatencyHistogram();   // committed until applied and answered
+    public final LatencyHistogram proposeBatchEntries = new LatencyHistogram();
+
+    // a consistent read of RaftNode's volatile state, taken under its lock
+    public static class Gauges {
+        public int term;
+        public int commitIndex;
+        public int lastApplied;
+        public int lastIndex;
+        public boolean leader;
+        public final Map<String, Integer> followerLag = new LinkedHashMap<>(); // leader: entries each follower lacks
+    }
+
+    // the /metrics page for every group this process hosts
+    public static String render(List<RaftNode> groups) {
+        StringBuilder sb = new StringBuilder();
+        Gauges[] gauges = new Gauges[groups.size()];
+        for (int i = 0; i < gauges.length; i++) gauges[i] = groups.get(i).gauges();
+
+        gauge(sb, "raft_term", "Current term.", groups, gauges, g -> (long) g.term);
+        gauge(sb, "raft_commit_index", "Highest log index known to be committed.", groups, gauges, g -> (long) g.commitIndex);
+        gauge(sb, "raft_last_applied", "Highest log index applied to the state machine.", groups, gauges, g -> (long) g.lastApplied);
+        gauge(sb, "raft_last_log_index", "Index of the last entry in the local log.", groups, gauges, g -> (long) g.lastIndex);
+        gauge(sb, "raft_is_leader", "1 if this node leads the group.", groups, gauges, g -> g.leader ? 1L : 0L);
+        header(sb, "raft_follower_lag_entries", "gauge", "Leader only: log entries a follower has not acknowledged yet.");
+        for (int i = 0; i < gauges.length; i++) {
+            for (Map.Entry<String, Integer> e : gauges[i].followerLag.entrySet()) {
+                sb.append("raft_follower_lag_entries{group=\"").append(groups.get(i).groupId())
+                        .append("\",peer=\"").append(e.getKey()).append("\"} ").append(e.getValue()).append('\n');
+            }
+        }
+
+        counter(sb, "raft_elections_started_total", "Elections this node started as a candidate.", groups, m -> m.electionsStarted);
+        counter(sb, "raft_elections_won_total", "Elections this node won.", groups, m -> m.electionsWon);
+        counter(sb, "raft_prevotes_lost_total", "Pre-votes that did not reach a majority.", groups, m -> m.preVotesLost);
+        counter(sb, "raft_check_quorum_stepdowns_total", "Times this leader stepped down after losing its quorum.", groups, m -> m.checkQuorumStepDowns);
+        counter(sb, "raft_leadership_transfers_total", "Leadership handed to another node by this one.", groups, m -> m.leadershipTransfers);
+        counter(sb, "raft_append_entries_failures_total", "AppendEntries requests that got no reply.", groups, m -> m.appendEntriesFailures);
+        counter(sb, "raft_append_entries_rejections_total", "AppendEntries requests a follower rejected for a log mismatch.", groups, m -> m.appendEntriesRejections);
+
+        summary(sb, "raft_propose_to_commit_seconds", "Client write from submission until a majority has stored it.", groups, m -> m.proposeToCommitNanos, true);
+        summary(sb, "raft_commit_to_apply_seconds", "Client write from commit until it is applied and answered.", groups, m -> m.commitToApplyNanos, true);
+        summary(sb, "raft_append_entries_seconds", "AppendEntries round trip, leader to follower and back.", groups, m -> m.appendEntriesNanos, true);
+        summary(sb, "raft_append_entries_entries", "Log entries carried per AppendEntries.", groups, m -> m.appendEntriesEntries, false);
+        summary(sb, "raft_propose_batch_entries", "Client commands appended per proposal batch.", groups, m -> m.proposeBatchEntries, false);
+
+        // the groups share one RaftClient, so these are per process
+        if (!groups.isEmpty() && groups.get(0).transport() instanceof RaftClient client) {
+            header(sb, "raft_rpc_request_body_bytes_total", "counter", "Raft RPC request bodies sent to peers, as encoded.");
+            sb.append("raft_rpc_request_body_bytes_total ").append(client.bodyBytes()).append('\n');
+            header(sb, "raft_rpc_request_wire_bytes_total", "counter", "The same bodies as sent, after compression.");
+            sb.append("raft_rpc_request_wire_bytes_total ").append(client.wireBytes()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, List<RaftNode> groups, Gauges[] gauges,
+                              Function<Gauges, Long> value) {
+        header(sb, name, "gauge", help);
+        for (int i = 0; i < gauges.length; i++) {
+            sb.append(name).append("{group=\"").append(groups.get(i).groupId()).append("\"} ")
+                    .append(value.apply(gauges[i])).append('\n');
+        }
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, List<RaftNode> groups,
+                                Function<RaftMetrics, LongAdder> counter) {
+        header(sb, name, "counter", help);
+        for (RaftNode node : groups) {
+            sb.append(name).append("{group=\"").append(node.groupId()).append("\"} ")
+                    .append(counter.apply(node.metrics()).sum()).append('\n');
+        }
+    }
+
+    // nanos=true: the histogram holds nanoseconds, reported in seconds as Prometheus expects
+    private static void summary(StringBuilder sb, String name, String help, List<RaftNode> groups,
+                                Function<RaftMetrics, LatencyHistogram> histogram, boolean nanos) {
+        header(sb, name, "summary", help);
+        for (RaftNode node : groups) {
+            LatencyHistogram h = histogram.apply(node.metrics());
+            String group = "group=\"" + node.groupId() + "\"";
+            for (double q : QUANTILES) {
+                sb.append(name).append('{').append(group).append(",quantile=\"").append(q).append("\"} ")
+                        .append(format(h.quantile(q), nanos)).append('\n');
+            }
+            sb.append(name).append("_sum{").append(group).append("} ").append(format(h.sum(), nanos)).append('\n');
+            sb.append(name).append("_count{").append(group).append("} ").append(h.count()).append('\n');
+        }
+    }
+
+    private static String format(long value, boolean nanos) {
+        return nanos ? Double.toString(value / 1e9) : Long.toString(value);
+    }
+}
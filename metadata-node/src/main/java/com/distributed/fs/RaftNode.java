@@ -1,110 +1,629 @@
 package com.distributed.fs;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 public class RaftNode {
     enum Role { FOLLOWER, CANDIDATE, LEADER }
 
+    static final int ELECTION_TIMEOUT_MIN_MS = 300;
+    static final int ELECTION_TIMEOUT_RANGE_MS = 200;
+    static final Command NOOP = Command.noop(); // appended by each new leader; the state machine ignores it
+    static final int HEARTBEAT_INTERVAL_MS = 150;
+    static final int HOME_TRANSFER_TIMEOUT_MS = 1000; // multi-group: a handover to the home member that takes longer is given up
+    static final int HOME_TRANSFER_RETRY_MS = 5000;   // and not tried again for this long
+
     private final String nodeId;               // e.g. "localhost:8001"
-    private final List<String> peers;          // peer ids
+    private final int groupId;                 // Raft group within the process (RaftGroups), 0 if there is one
+    private final String name;                 // nodeId, plus "/g<groupId>" for groups other than 0
+    // configurations by the index they take effect at: the snapshot's (or the --peers one, or
+    // nobody with --join) at or below the snapshot index, then one per CONFIG entry still in the
+    // log. The last one is in effect, committed or not (see ClusterConfig).
+    private final TreeMap<Integer, ClusterConfig> configs = new TreeMap<>();
+    private ClusterConfig config;       // configs.lastEntry(), and what the fields below derive from
+    private List<String> peers;         // every other member, voters and learners: replication targets
+    private List<String> voterPeers;    // the other voters: who we ask for votes and count in quorums
+    private boolean membershipChanging; // leader: a changeMembership call is in flight
     private final int port;
+    private final RaftOptions options;
 
-    // Raft persistent state (in-memory for this prototype)
+    // Raft persistent state (mirrored to disk through the WAL)
     private int currentTerm = 0;
     private String votedFor = null;
-    private final List<LogEntry> log = new ArrayList<>(); // index 0 unused for simplicity
+    private final RaftLog log = new RaftLog();
+    private final WriteAheadLog wal;
+    private final SnapshotStore snapshots;
+    private volatile int durableIndex = 0; // highest log index known to be fsynced locally
+    private boolean snapshotting = false;  // a snapshot is being written in the background
+
+    // InstallSnapshot chunks received so far (follower side)
+    private ByteArrayOutputStream pendingSnapshot;
+    private int pendingSnapshotIndex;
+    // an installed snapshot the apply thread still has to load into the state machine
+    private byte[] restoreData;
+    private int restoreIndex;
 
     // volatile state
     private int commitIndex = 0;
     private int lastApplied = 0;
+    private int leaderCommit = 0; // highest commit index a leader has told us about (may be ahead of commitIndex)
+
+    // leader state: one replicator per follower, each tracking that follower's next/match index
+    private Map<String, Replicator> replicators = new HashMap<>();
+
+    // client batches appended by this leader that haven't been applied yet, oldest first
+    private final ArrayDeque<PendingBatch> pendingBatches = new ArrayDeque<>();
+    private final ProposalBatcher batcher;
+    private final Thread applier; // the only thread that touches the state machine after recovery
+    private final RaftMetrics metrics = new RaftMetrics();
+
+    private static class PendingBatch {
+        final int lastIndex;
+        final List<ProposalBatcher.Proposal> proposals;
+        long committedNanos; // when commitIndex reached lastIndex, 0 until then
+
+        PendingBatch(int lastIndex, List<ProposalBatcher.Proposal> proposals) {
+            this.lastIndex = lastIndex;
+            this.proposals = proposals;
+        }
+    }
 
-    // leader state
-    private final Map<String,Integer> nextIndex = new ConcurrentHashMap<>();
-    private final Map<String,Integer> matchIndex = new ConcurrentHashMap<>();
+    // returned by buildAppendEntries when the entries a follower needs were compacted away
+    static final RpcModels.AppendEntriesRequest NEEDS_SNAPSHOT = new RpcModels.AppendEntriesRequest();
 
     private Role role = Role.FOLLOWER;
     private String leaderId = null;
+    private long lastLeaderContact = System.nanoTime(); // when we last accepted an RPC from the leader
+    private long leaderSince; // when we last became leader, so check-quorum gives a new term time to hear acks
+    private String transferTarget; // leader: handing leadership to this peer; new proposals wait meanwhile
+    private long leaseFloorNanos;  // leader: acks for requests sent before this don't count toward a lease
+    private long nextHomeTransferNanos; // leader of a group we aren't home for: earliest time to hand it home
+    private final AtomicInteger readsWaiting = new AtomicInteger();
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
-    private final ExecutorService executor = Executors.newFixedThreadPool(8);
-    private final RaftClient client = new RaftClient();
-    private final MetadataStateMachine stateMachine = new MetadataStateMachine();
+    private final ExecutorService executor;    // HTTP request handling
+    private final ExecutorService rpcExecutor; // outbound RPCs (and, with virtual threads, anything else that blocks)
+    private final RaftTransport client;
+    private final MetadataStateMachine stateMachine;
 
     private final Random rand = new Random();
     private ScheduledFuture<?> electionTimeoutFuture;
     private ScheduledFuture<?> heartbeatFuture;
+    private RaftHttpServer http;
+    private volatile boolean stopped = false;
 
     private final Object lock = new Object(); // protects Raft state
 
-    public RaftNode(String nodeId, List<String> peers, int port) {
+    public RaftNode(String nodeId, List<String> peers, int port) throws IOException {
+        this(nodeId, peers, port, new RaftOptions());
+    }
+
+    public RaftNode(String nodeId, List<String> peers, int port, RaftOptions options) throws IOException {
+        this(nodeId, peers, port, 0, new RaftClient(options), options);
+    }
+
+    // one of several groups hosted by RaftGroups, which share the port and the RaftClient; or a
+    // node of an in-process cluster wired together by an InMemoryRaftTransport (port unused)
+    public RaftNode(String nodeId, List<String> peers, int port, int groupId, RaftTransport client,
+                    RaftOptions options) throws IOException {
         this.nodeId = nodeId;
-        this.peers = new ArrayList<>(peers);
+        this.groupId = groupId;
+        this.name = groupId == 0 ? nodeId : nodeId + "/g" + groupId;
+        List<String> voters = new ArrayList<>(peers);
+        voters.add(nodeId);
+        // derived here as configChanged() would, without calling into a half-built node; recover()
+        // applies whatever the snapshot and WAL hold on top
+        this.config = options.join ? ClusterConfig.empty() : new ClusterConfig(voters, List.of());
+        configs.put(0, config);
+        this.peers = config.othersThan(nodeId);
+        this.voterPeers = config.votersOtherThan(nodeId);
         this.port = port;
-        // to make log indexing simple, insert a dummy entry at index 0
-        log.add(new LogEntry(0, ""));
+        this.options = options;
+        if (options.readLeaseMs >= ELECTION_TIMEOUT_MIN_MS) {
+            throw new IllegalArgumentException("--read-lease-ms must be below the "
+                    + ELECTION_TIMEOUT_MIN_MS + "ms minimum election timeout");
+        }
+        // an AppendEntries batch or snapshot chunk must fit in a peer's request limit even as JSON (base64 adds a third)
+        if (Math.max(options.replicationMaxBatchBytes, options.snapshotChunkBytes) * 2 > options.rpcMaxRequestBytes) {
+            throw new IllegalArgumentException("--rpc-max-request-bytes must be at least twice"
+                    + " --replication-max-batch-bytes and --snapshot-chunk-bytes");
+        }
+        String dirName = nodeId.replace(':', '_') + (groupId == 0 ? "" : "-g" + groupId);
+        Path dir = Paths.get(options.dataDir, dirName);
+        this.wal = new WriteAheadLog(dir, options.walSegmentBytes, options.walGroupCommit);
+        this.snapshots = new SnapshotStore(dir);
+        this.client = client;
+        if (options.virtualThreads) {
+            // a thread per request/RPC: a call stuck on a slow peer parks its virtual thread instead
+            // of holding one of a few pool threads that heartbeats and votes are queued behind.
+            // Inbound requests get platform threads, though: on JDK 21 the com.sun HttpServer reads
+            // request bodies inside a synchronized method, which pins the carrier, and with a
+            // carrier per core a few slow uploads stall every virtual thread in the process
+            this.executor = Executors.newCachedThreadPool();
+            this.rpcExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            this.executor = Executors.newFixedThreadPool(8);
+            this.rpcExecutor = Executors.newCachedThreadPool();
+        }
+        this.stateMachine = new MetadataStateMachine(options.watchBufferChanges);
+        this.batcher = new ProposalBatcher(this, options.putBatchMaxSize, options.putBatchLingerMs);
+        this.applier = new Thread(this::runApplier, "raft-apply-" + name);
+        this.applier.setDaemon(true);
     }
 
     public String getNodeId() {
         return nodeId;
     }
 
+    int groupId() {
+        return groupId;
+    }
+
+    String name() {
+        return name;
+    }
+
+    RaftOptions options() {
+        return options;
+    }
+
+    RaftMetrics metrics() {
+        return metrics;
+    }
+
+    RaftTransport transport() {
+        return client;
+    }
+
 
     public ExecutorService getExecutor() { return executor; }
 
     public void start() throws Exception {
-        RaftHttpServer http = new RaftHttpServer(this, port);
+        startGroup();
+        http = new RaftHttpServer(this, port);
         http.start();
+    }
+
+    // start taking part in the group without an HTTP server of our own (RaftGroups serves all groups)
+    void startGroup() throws IOException {
+        recover();
+        applier.start();
+        batcher.start();
         resetElectionTimeout();
     }
 
+    // shut the node down in-process (benchmarks start and stop whole clusters in one JVM).
+    // Executors and the batcher are stopped without interrupting their threads: an interrupt
+    // during a WAL write or fsync would close the file channel under everyone else.
+    public void stop() throws IOException {
+        List<Replicator> active;
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll(); // lets the apply thread exit
+            if (electionTimeoutFuture != null) electionTimeoutFuture.cancel(false);
+            if (heartbeatFuture != null) heartbeatFuture.cancel(false);
+            active = new ArrayList<>(replicators.values());
+        }
+        for (Replicator r : active) r.stop();
+        if (http != null) http.stop();
+        batcher.stop();
+        scheduler.shutdown();
+        rpcExecutor.shutdown();
+        executor.shutdown();
+        wal.close();
+    }
+
+    boolean isLeader() {
+        synchronized (lock) { return role == Role.LEADER; }
+    }
+
+    long lastLeaderContactNanos() {
+        synchronized (lock) { return lastLeaderContact; }
+    }
+
+    int currentTerm() {
+        synchronized (lock) { return currentTerm; }
+    }
+
+    int commitIndex() {
+        synchronized (lock) { return commitIndex; }
+    }
+
+    int lastApplied() {
+        synchronized (lock) { return lastApplied; }
+    }
+
+    int snapshotIndex() {
+        synchronized (lock) { return log.snapshotIndex(); }
+    }
+
+    // reload term/vote, the latest snapshot and the log from disk before we take part in any election
+    private void recover() throws IOException {
+        synchronized (lock) {
+            WriteAheadLog.HardState hs = wal.loadHardState();
+            currentTerm = hs.term;
+            votedFor = hs.votedFor;
+            SnapshotStore.Snapshot snap = snapshots.load();
+            if (snap != null) {
+                if (snap.config != null) {
+                    configs.clear();
+                    configs.put(snap.lastIncludedIndex, ClusterConfig.decode(snap.config));
+                }
+                stateMachine.restore(snap.lastIncludedIndex, snap.data);
+                log.compactTo(snap.lastIncludedIndex, snap.lastIncludedTerm);
+                commitIndex = lastApplied = snap.lastIncludedIndex;
+            }
+            List<LogEntry> onDisk = wal.load();
+            int first = wal.firstIndex();
+            if (wal.lastIndex() < log.snapshotIndex()) {
+                // crashed between saving an installed snapshot and resetting the WAL
+                wal.reset(log.snapshotIndex() + 1);
+            } else {
+                int skip = Math.max(0, log.snapshotIndex() + 1 - first);
+                log.appendAll(onDisk.subList(skip, onDisk.size()));
+                noteConfigs(onDisk.subList(skip, onDisk.size()), first + skip);
+            }
+            configChanged();
+            durableIndex = log.lastIndex();
+            System.out.println(name + " recovered term=" + currentTerm + " votedFor=" + votedFor
+                    + " snapshotIndex=" + log.snapshotIndex() + " lastIndex=" + log.lastIndex());
+        }
+    }
+
+    // must be called under lock whenever currentTerm or votedFor change
+    private void persistHardState() {
+        try {
+            wal.saveHardState(currentTerm, votedFor);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to persist term/vote", e);
+        }
+    }
+
+    // write entries to the WAL (page cache only); pass the result to syncWal() outside the lock
+    private long appendToWal(List<LogEntry> entries, int firstIndex) {
+        try {
+            return wal.append(entries, firstIndex);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to append to WAL", e);
+        }
+    }
+
+    private void syncWal(long seq, int upToIndex) {
+        try {
+            wal.sync(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to sync WAL", e);
+        }
+        synchronized (lock) {
+            if (upToIndex > durableIndex && upToIndex <= log.lastIndex()) durableIndex = upToIndex;
+        }
+    }
+
+    // --- Membership ---
+
+    // under lock: CONFIG entries among entries (the first at firstIndex) take effect now, on append
+    private void noteConfigs(List<LogEntry> entries, int firstIndex) {
+        for (int i = 0; i < entries.size(); i++) {
+            byte[] command = entries.get(i).command;
+            if (Command.isConfig(command)) configs.put(firstIndex + i, ClusterConfig.decode(Command.decode(command).value));
+        }
+        configChanged();
+    }
+
+    // under lock: act on the latest configuration after configs changed. A leader starts
+    // replicating to new members from the configuration entry on (probing back from there as
+    // usual) and stops sending to removed ones.
+    private void configChanged() {
+        ClusterConfig latest = configs.lastEntry().getValue();
+        if (latest == config) return;
+        config = latest;
+        peers = config.othersThan(nodeId);
+        voterPeers = config.votersOtherThan(nodeId);
+        System.out.println(name + " configuration " + config);
+        if (role != Role.LEADER) return;
+        Map<String, Replicator> updated = new HashMap<>();
+        for (String p : peers) {
+            Replicator r = replicators.get(p);
+            if (r == null) r = new Replicator(this, p, currentTerm, configs.lastKey(), client, rpcExecutor, options);
+            updated.put(p, r);
+        }
+        for (Map.Entry<String, Replicator> e : replicators.entrySet()) {
+            if (!updated.containsKey(e.getKey())) e.getValue().stop();
+        }
+        replicators = updated;
+    }
+
+    // a leader whose committed configuration no longer has it as a voter steps down once that
+    // entry is applied (so the change's own proposal still gets its OK); the remaining voters
+    // elect a leader among themselves when its heartbeats stop
+    private void stepDownIfRemoved() {
+        List<Replicator> stopped;
+        synchronized (lock) {
+            if (role != Role.LEADER || config.isVoter(nodeId) || lastApplied < configs.lastKey()) return;
+            System.out.println(name + " is no longer a voter, stepping down");
+            stopped = becomeFollower();
+        }
+        for (Replicator r : stopped) r.stop();
+        failPendingBatches();
+    }
+
+    // Admin: change the group's membership, one server at a time.
+    //   add-learner  start replicating to member without counting it in any quorum
+    //   promote      make a learner a voter, once it has everything that was committed when asked
+    //                (waiting up to timeoutMs for that), so commits never wait on a node far behind
+    //   remove       drop a voter or learner (this leader included: it steps down afterwards)
+    // Answers OK once the new configuration is committed and applied, NOT_LEADER:<leader>, or error: ...
+    public String changeMembership(String action, String member, long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        ClusterConfig next;
+        synchronized (lock) {
+            if (role != Role.LEADER) return notLeader();
+            if (membershipChanging || configs.lastKey() > commitIndex) return "error: another membership change is in progress";
+            // until an entry of our own term commits, an uncommitted change from an earlier leader
+            // could still be in some logs, and two overlapping changes may not share a majority
+            if (log.termAt(commitIndex) != currentTerm) return "error: leader not ready yet, retry";
+            switch (action) {
+                case "add-learner":
+                    if (config.contains(member)) return "error: " + member + " is already a member";
+                    next = config.withLearner(member);
+                    break;
+                case "promote":
+                    if (!config.isLearner(member)) return "error: " + member + " is not a learner";
+                    next = config.promote(member);
+                    break;
+                case "remove":
+                    if (!config.contains(member)) return "error: " + member + " is not a member";
+                    if (config.voters.equals(List.of(member))) return "error: can't remove the last voter";
+                    next = config.without(member);
+                    break;
+                default:
+                    return "error: unknown action " + action;
+            }
+            membershipChanging = true;
+        }
+        try {
+            if (action.equals("promote")) {
+                synchronized (lock) {
+                    int target = commitIndex;
+                    Replicator r = replicators.get(member);
+                    if (!awaitAsLeader(() -> r.matchIndex() >= target, deadline)) {
+                        return role == Role.LEADER ? "error: " + member + " has not caught up (at " + r.matchIndex()
+                                + " of " + target + ")" : notLeader();
+                    }
+                }
+            }
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            String result = clientWrite(Command.config(next), Math.max(1, left));
+            if (result.equals(MetadataStateMachine.OK)) System.out.println(name + " " + action + " " + member + " committed");
+            return result;
+        } finally {
+            synchronized (lock) { membershipChanging = false; }
+        }
+    }
+
+    public String membership() {
+        synchronized (lock) {
+            StringBuilder sb = new StringBuilder(config.toString());
+            if (role == Role.LEADER) {
+                sb.append(" lastIndex=").append(log.lastIndex());
+                for (String p : peers) {
+                    Replicator r = replicators.get(p);
+                    sb.append(' ').append(p).append(".matchIndex=").append(r == null ? 0 : r.matchIndex());
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    // for /metrics: one consistent read of the indexes, plus how far each follower trails our log
+    RaftMetrics.Gauges gauges() {
+        RaftMetrics.Gauges g = new RaftMetrics.Gauges();
+        synchronized (lock) {
+            g.term = currentTerm;
+            g.commitIndex = commitIndex;
+            g.lastApplied = lastApplied;
+            g.lastIndex = log.lastIndex();
+            g.leader = role == Role.LEADER;
+            if (g.leader) {
+                for (String p : peers) {
+                    Replicator r = replicators.get(p);
+                    g.followerLag.put(p, g.lastIndex - (r == null ? 0 : r.matchIndex()));
+                }
+            }
+        }
+        return g;
+    }
+
+    // every other member of the group, for RaftGroups' shared heartbeats
+    List<String> peers() {
+        synchronized (lock) { return peers; }
+    }
+
     // --- Election timeout & leader heartbeat management ---
     private void resetElectionTimeout() {
-        if (electionTimeoutFuture != null) electionTimeoutFuture.cancel(true);
-        int timeout = 300 + rand.nextInt(200); // 300-500ms for demo
+        // never interrupt: a running timer task may be inside a WAL write, and an interrupt closes
+        // the FileChannel (ClosedByInterruptException) for good
+        if (electionTimeoutFuture != null) electionTimeoutFuture.cancel(false);
+        if (stopped) return;
+        int timeout = ELECTION_TIMEOUT_MIN_MS + rand.nextInt(ELECTION_TIMEOUT_RANGE_MS); // 300-500ms for demo
+        if (options.groups > 1) {
+            // spread leaders: each group's "home" member times out first, the others 100ms later
+            timeout = isHomeForGroup() ? ELECTION_TIMEOUT_MIN_MS + rand.nextInt(50) : timeout + 100;
+        }
         electionTimeoutFuture = scheduler.schedule(this::onElectionTimeout, timeout, TimeUnit.MILLISECONDS);
     }
 
+    private boolean isHomeForGroup() {
+        return nodeId.equals(homeForGroup());
+    }
+
+    // under lock: voters sorted by id take turns being the preferred leader of successive groups
+    private String homeForGroup() {
+        List<String> members = new ArrayList<>(config.voters);
+        if (members.isEmpty()) return null;
+        Collections.sort(members);
+        return members.get(groupId % members.size());
+    }
+
+    // Multi-group leader spreading. The shorter election timeout only makes the home member likely
+    // to win; whoever wins instead (the home was down, slow, or lost the race) hands the group back
+    // with transferLeadership once the home has acknowledged everything committed in this term.
+    // A handover that fails is retried after HOME_TRANSFER_RETRY_MS; meanwhile we simply lead.
+    private void maybeReturnLeadershipHome() {
+        String home;
+        synchronized (lock) {
+            if (role != Role.LEADER || transferTarget != null || log.termAt(commitIndex) != currentTerm) return;
+            home = homeForGroup();
+            if (home == null || home.equals(nodeId)) return;
+            Replicator r = replicators.get(home);
+            long now = System.nanoTime();
+            if (r == null || r.matchIndex() < commitIndex || now - nextHomeTransferNanos < 0) return;
+            nextHomeTransferNanos = now + TimeUnit.MILLISECONDS.toNanos(HOME_TRANSFER_RETRY_MS);
+        }
+        rpcExecutor.execute(() -> {
+            String result = transferLeadership(home, HOME_TRANSFER_TIMEOUT_MS);
+            if (!result.startsWith("OK")) System.out.println(name + " could not hand group to " + home + ": " + result);
+        });
+    }
+
     private void onElectionTimeout() {
         synchronized (lock) {
             if (role == Role.LEADER) return; // leader won't start election
+        }
+        // with virtual threads the scheduler only keeps time; the vote rounds block elsewhere
+        if (options.virtualThreads) rpcExecutor.execute(this::campaign);
+        else campaign();
+    }
+
+    private void campaign() {
+        campaign(false);
+    }
+
+    // pre-vote (unless --pre-vote=false), then a real election in a new term. A transfer (our
+    // leader sent TimeoutNow) skips the pre-vote and asks voters to ignore that leader.
+    private void campaign(boolean transfer) {
+        synchronized (lock) {
+            // learners, removed members and --join nodes that haven't been added yet never stand
+            if (!config.isVoter(nodeId)) {
+                resetElectionTimeout();
+                return;
+            }
+        }
+        if (!transfer && options.preVote && !preVote()) {
+            resetElectionTimeout();
+            return;
+        }
+        synchronized (lock) {
+            // a leader may have reached us while the pre-vote was out
+            if (role == Role.LEADER || (!transfer && options.preVote && leaderStillActive())) {
+                resetElectionTimeout();
+                return;
+            }
             role = Role.CANDIDATE;
             currentTerm += 1;
             votedFor = nodeId;
-            System.out.println(nodeId + " -> starting election for term " + currentTerm);
+            persistHardState();
+            metrics.electionsStarted.increment();
+            System.out.println(name + " -> starting election for term " + currentTerm);
         }
-        startElection();
+        startElection(transfer);
     }
 
-    private void startElection() {
+    // Ask the peers whether they would vote for us in the next term, without anyone (us included)
+    // changing term; true once a majority would. A node coming back from a partition or a long
+    // pause therefore can't depose a working leader: the peers still hear from it and say no, and
+    // our term stays where it was instead of climbing with every timeout.
+    private boolean preVote() {
+        RpcModels.RequestVoteRequest req = new RpcModels.RequestVoteRequest();
+        List<String> voters;
+        int needed;
+        synchronized (lock) {
+            req.term = currentTerm + 1;
+            req.candidateId = nodeId;
+            req.lastLogIndex = log.lastIndex();
+            req.lastLogTerm = log.lastTerm();
+            req.preVote = true;
+            voters = voterPeers;
+            needed = config.majority() - 1; // grants we need besides our own
+        }
+        if (needed == 0) return true;
+        CompletableFuture<Boolean> won = new CompletableFuture<>();
+        AtomicInteger grants = new AtomicInteger();
+        AtomicInteger answers = new AtomicInteger();
+        ExecutorService voteExecutor = options.virtualThreads ? rpcExecutor : scheduler;
+        for (String peer : voters) {
+            voteExecutor.submit(() -> {
+                RpcModels.RequestVoteResponse resp = client.requestVote(peer, groupId, req);
+                if (resp != null && resp.voteGranted) {
+                    if (grants.incrementAndGet() >= needed) won.complete(true);
+                } else if (resp != null) {
+                    stepDownIfTermHigher(resp.term); // we are behind: adopt the term, still as a follower
+                }
+                if (answers.incrementAndGet() == voters.size()) won.complete(false);
+            });
+        }
+        try {
+            boolean ok = won.get(400, TimeUnit.MILLISECONDS);
+            if (!ok) {
+                System.out.println(name + " -> pre-vote for term " + req.term + " lost");
+                metrics.preVotesLost.increment();
+            }
+            return ok;
+        } catch (TimeoutException | ExecutionException e) {
+            metrics.preVotesLost.increment();
+            return false;
+        } catch (InterruptedException e) {
+            // not from us: timers are cancelled without interrupting (see resetElectionTimeout)
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void startElection(boolean transfer) {
         final int termStarted;
-        synchronized (lock) { termStarted = currentTerm; }
+        final List<String> voters;
+        final int majority;
+        synchronized (lock) {
+            termStarted = currentTerm;
+            voters = voterPeers;
+            majority = config.majority();
+        }
         AtomicInteger votes = new AtomicInteger(1); // vote for self
-        CountDownLatch latch = new CountDownLatch(peers.size());
-        for (String peer : peers) {
-            scheduler.submit(() -> {
+        if (majority == 1) becomeLeader(termStarted);
+        CountDownLatch latch = new CountDownLatch(voters.size());
+        ExecutorService voteExecutor = options.virtualThreads ? rpcExecutor : scheduler;
+        for (String peer : voters) {
+            voteExecutor.submit(() -> {
                 try {
                     RpcModels.RequestVoteRequest req = new RpcModels.RequestVoteRequest();
                     req.term = termStarted;
                     req.candidateId = nodeId;
+                    req.leadershipTransfer = transfer;
                     synchronized (lock) {
-                        req.lastLogIndex = log.size()-1;
-                        req.lastLogTerm = (req.lastLogIndex >= 0) ? log.get(req.lastLogIndex).term : 0;
+                        req.lastLogIndex = log.lastIndex();
+                        req.lastLogTerm = log.lastTerm();
                     }
-                    RpcModels.RequestVoteResponse resp = client.requestVote(peer, req);
+                    RpcModels.RequestVoteResponse resp = client.requestVote(peer, groupId, req);
                     if (resp != null) {
                         synchronized (lock) {
                             if (resp.term > currentTerm) {
                                 currentTerm = resp.term;
                                 role = Role.FOLLOWER;
                                 votedFor = null;
+                                persistHardState();
                             }
                         }
                         if (resp.voteGranted && role == Role.CANDIDATE && currentTerm == termStarted) {
                             int v = votes.incrementAndGet();
-                            if (v > peers.size() / 2) {
-                                becomeLeader();
+                            if (v >= majority) {
+                                becomeLeader(termStarted);
                             }
                         }
                     }
@@ -119,107 +638,452 @@ public class RaftNode {
         resetElectionTimeout();
     }
 
-    private void becomeLeader() {
+    private void becomeLeader(int electedTerm) {
+        long walSeq;
+        int noopIndex;
         synchronized (lock) {
+            if (role != Role.CANDIDATE || currentTerm != electedTerm) return; // late vote, or already leader
             role = Role.LEADER;
             leaderId = nodeId;
-            System.out.println(nodeId + " BECAME LEADER for term " + currentTerm);
+            leaderSince = System.nanoTime();
+            leaseFloorNanos = leaderSince;
+            metrics.electionsWon.increment();
+            System.out.println(name + " BECAME LEADER for term " + currentTerm);
             // init leader state
-            int next = log.size();
+            int next = log.lastIndex() + 1;
+            for (Replicator r : replicators.values()) r.stop();
+            replicators = new HashMap<>();
             for (String p : peers) {
-                nextIndex.put(p, next);
-                matchIndex.put(p, 0);
+                replicators.put(p, new Replicator(this, p, currentTerm, next, client, rpcExecutor, options));
             }
-            if (heartbeatFuture != null) heartbeatFuture.cancel(true);
-            heartbeatFuture = scheduler.scheduleAtFixedRate(this::sendHeartbeats, 0, 150, TimeUnit.MILLISECONDS);
+            // commit an entry of our own term right away: until one commits we can't tell which
+            // earlier entries are committed, so neither reads nor older entries can be served
+            noopIndex = next;
+            List<LogEntry> noop = List.of(new LogEntry(currentTerm, NOOP));
+            log.appendAll(noop);
+            walSeq = appendToWal(noop, noopIndex);
+            if (heartbeatFuture != null) heartbeatFuture.cancel(false);
+            heartbeatFuture = scheduler.scheduleAtFixedRate(this::sendHeartbeats, 0, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
         }
+        syncWal(walSeq, noopIndex);
+        advanceCommitIndex();
     }
 
-    private void stepDownIfTermHigher(int term) {
+    void stepDownIfTermHigher(int term) {
+        List<Replicator> stopped;
         synchronized (lock) {
-            if (term > currentTerm) {
-                currentTerm = term;
-                role = Role.FOLLOWER;
-                votedFor = null;
-                leaderId = null;
-                if (heartbeatFuture != null) heartbeatFuture.cancel(true);
-                resetElectionTimeout();
-            }
+            if (term <= currentTerm) return;
+            currentTerm = term;
+            votedFor = null;
+            persistHardState();
+            stopped = becomeFollower();
+        }
+        for (Replicator r : stopped) r.stop();
+        failPendingBatches();
+    }
+
+    // under lock: drop to follower in the current term; returns the replicators to stop (outside the lock)
+    private List<Replicator> becomeFollower() {
+        role = Role.FOLLOWER;
+        leaderId = null;
+        if (heartbeatFuture != null) heartbeatFuture.cancel(false);
+        resetElectionTimeout();
+        lock.notifyAll(); // waiting reads fail now rather than at their deadline
+        return new ArrayList<>(replicators.values());
+    }
+
+    // check-quorum: a leader that hasn't heard from a majority for a whole election timeout steps
+    // down in its own term, so clients stop waiting on it and find the majority side's leader
+    private void checkQuorum() {
+        List<Replicator> stopped;
+        synchronized (lock) {
+            if (!options.checkQuorum || role != Role.LEADER) return;
+            long window = TimeUnit.MILLISECONDS.toNanos(ELECTION_TIMEOUT_MIN_MS + ELECTION_TIMEOUT_RANGE_MS);
+            long now = System.nanoTime();
+            if (now - leaderSince < window || now - quorumContactNanos() < window) return;
+            System.out.println(name + " lost contact with a majority, stepping down in term " + currentTerm);
+            metrics.checkQuorumStepDowns.increment();
+            stopped = becomeFollower();
+        }
+        for (Replicator r : stopped) r.stop();
+        failPendingBatches();
+    }
+
+    // we lost leadership: whatever hasn't committed yet may or may not make it under the next leader
+    private void failPendingBatches() {
+        List<PendingBatch> orphaned;
+        synchronized (lock) {
+            if (role == Role.LEADER || pendingBatches.isEmpty()) return;
+            orphaned = new ArrayList<>(pendingBatches);
+            pendingBatches.clear();
+        }
+        for (PendingBatch b : orphaned) {
+            for (ProposalBatcher.Proposal p : b.proposals) p.result.complete("IN_PROGRESS");
         }
     }
 
+    // every 150ms: replicators send an (empty, if idle) AppendEntries so followers keep their timers reset
     private void sendHeartbeats() {
+        checkQuorum();
+        List<Replicator> targets;
+        synchronized (lock) {
+            targets = role == Role.LEADER ? new ArrayList<>(replicators.values()) : null;
+        }
+        if (targets == null) {
+            failPendingBatches(); // deposed by an AppendEntries/RequestVote from a newer term
+            return;
+        }
+        for (Replicator r : targets) {
+            // with several groups RaftGroups sends one shared heartbeat per peer; replicators just retry
+            if (options.groups > 1) r.tick(); else r.heartbeat();
+        }
+        if (options.groups > 1) maybeReturnLeadershipHome();
+    }
+
+    // --- Shared heartbeats (RaftGroups) ---
+
+    // this group's part of the shared heartbeat to peer, or null if we don't lead the group
+    RpcModels.GroupHeartbeat heartbeatFor(String peer) {
+        synchronized (lock) {
+            if (role != Role.LEADER) return null;
+            Replicator r = replicators.get(peer);
+            if (r == null) return null;
+            RpcModels.GroupHeartbeat hb = new RpcModels.GroupHeartbeat();
+            hb.group = groupId;
+            hb.term = currentTerm;
+            hb.commitIndex = Math.min(commitIndex, r.matchIndex());
+            return hb;
+        }
+    }
+
+    // follower side of a shared heartbeat: the empty-AppendEntries path without a log check, which
+    // is safe because the commit index it carries never exceeds what this follower acknowledged
+    RpcModels.GroupHeartbeatAck onGroupHeartbeat(String leader, RpcModels.GroupHeartbeat hb) {
+        RpcModels.GroupHeartbeatAck ack = new RpcModels.GroupHeartbeatAck();
+        ack.group = groupId;
+        synchronized (lock) {
+            if (hb.term < currentTerm) {
+                ack.term = currentTerm;
+                ack.success = false;
+                return ack;
+            }
+            leaderId = leader;
+            if (hb.term > currentTerm) { currentTerm = hb.term; votedFor = null; persistHardState(); }
+            role = Role.FOLLOWER;
+            lastLeaderContact = System.nanoTime();
+            resetElectionTimeout();
+            leaderCommit = Math.max(leaderCommit, hb.commitIndex);
+            int newCommit = Math.min(hb.commitIndex, log.lastIndex());
+            if (newCommit > commitIndex) {
+                commitIndex = newCommit;
+                lock.notifyAll(); // wake the apply thread
+            }
+            ack.term = currentTerm;
+            ack.success = true;
+        }
+        return ack;
+    }
+
+    // leader side: peer answered the shared heartbeat we sent at sentAt
+    void onHeartbeatAck(String peer, RpcModels.GroupHeartbeatAck ack, long sentAt) {
+        if (!ack.success) {
+            stepDownIfTermHigher(ack.term); // no-op unless the follower has moved to a newer term
+            return;
+        }
+        Replicator r;
+        synchronized (lock) {
+            r = replicators.get(peer);
+        }
+        if (r != null) {
+            r.onHeartbeatAck(ack.term, sentAt);
+            onLeaderContact();
+        }
+    }
+
+    private void signalReplicators() {
+        List<Replicator> targets;
         synchronized (lock) {
             if (role != Role.LEADER) return;
+            targets = new ArrayList<>(replicators.values());
         }
-        for (String peer : peers) {
-            scheduler.execute(() -> {
-                RpcModels.AppendEntriesRequest req = buildAppendEntriesRequestForPeer(peer);
-                RpcModels.AppendEntriesResponse resp = client.appendEntries(peer, req);
-                if (resp != null) {
-                    if (resp.term > currentTerm) {
-                        stepDownIfTermHigher(resp.term);
-                    } else {
-                        if (resp.success) {
-                            // update nextIndex/matchIndex - simplified:
-                            int lastIndex;
-                            synchronized (lock) { lastIndex = log.size()-1; }
-                            matchIndex.put(peer, lastIndex);
-                            nextIndex.put(peer, lastIndex + 1);
-                            advanceCommitIndex();
-                        } else {
-                            // follower mismatch, decrement nextIndex and retry next heartbeat
-                            nextIndex.merge(peer, 1, (oldv, one) -> Math.max(1, oldv - 1));
-                        }
-                    }
-                }
-            });
+        for (Replicator r : targets) r.signal();
+    }
+
+    int lastLogIndex() {
+        synchronized (lock) { return log.lastIndex(); }
+    }
+
+    // where a Replicator should resume after a rejected AppendEntries that carried conflict hints
+    int nextIndexAfterConflict(int conflictTerm, int conflictIndex) {
+        if (conflictTerm <= 0) return conflictIndex;
+        synchronized (lock) {
+            // if we have entries of the follower's conflicting term, our logs agree up to our last one
+            int ours = log.lastIndexOfTerm(conflictTerm);
+            return ours > 0 ? ours + 1 : conflictIndex;
         }
     }
 
-    private RpcModels.AppendEntriesRequest buildAppendEntriesRequestForPeer(String peer) {
+    // Used by Replicator: entries from nextIdx on, capped at maxEntries / maxBytes (but at least one
+    // entry if any are pending). Null if we are no longer leader for term; NEEDS_SNAPSHOT if nextIdx
+    // was compacted away.
+    RpcModels.AppendEntriesRequest buildAppendEntries(int term, int nextIdx, int maxEntries, long maxBytes) {
         RpcModels.AppendEntriesRequest req = new RpcModels.AppendEntriesRequest();
         synchronized (lock) {
+            if (role != Role.LEADER || currentTerm != term) return null;
+            if (nextIdx <= log.snapshotIndex()) return NEEDS_SNAPSHOT;
             req.term = currentTerm;
             req.leaderId = nodeId;
-            int nextIdx = nextIndex.getOrDefault(peer, log.size());
             int prevIdx = Math.max(0, nextIdx - 1);
             req.prevLogIndex = prevIdx;
-            req.prevLogTerm = (prevIdx >= 0 && prevIdx < log.size()) ? log.get(prevIdx).term : 0;
-            // send entries from nextIdx to end
-            List<LogEntry> entries = new ArrayList<>();
-            for (int i = nextIdx; i < log.size(); i++) entries.add(log.get(i));
-            req.entries = entries;
+            req.prevLogTerm = log.termAt(prevIdx);
+            int end = nextIdx;
+            long bytes = 0;
+            while (end <= log.lastIndex() && end - nextIdx < maxEntries) {
+                bytes += log.commandSize(end) + 16;
+                if (bytes > maxBytes && end > nextIdx) break;
+                end++;
+            }
+            req.entries = log.slice(nextIdx, end);
             req.leaderCommit = commitIndex;
         }
         return req;
     }
 
-    // try to update commitIndex based on matchIndex of followers (simplified)
+    // a follower acknowledged more of the log
+    void onFollowerAcked() {
+        advanceCommitIndex();
+    }
+
+    // a follower answered an AppendEntries in our term; wake reads waiting to confirm leadership
+    void onLeaderContact() {
+        if (readsWaiting.get() == 0) return;
+        synchronized (lock) { lock.notifyAll(); }
+    }
+
+    // under lock: the latest time at which a majority (counting ourselves) was known to follow us,
+    // as the send time of the requests they answered
+    private long quorumContactNanos() {
+        int needed = config.majority() - (config.isVoter(nodeId) ? 1 : 0); // voters needed besides ourselves
+        if (needed <= 0) return System.nanoTime();
+        long[] acks = new long[voterPeers.size()];
+        int i = 0;
+        for (String p : voterPeers) {
+            Replicator r = replicators.get(p);
+            acks[i++] = r == null ? System.nanoTime() - TimeUnit.DAYS.toNanos(1) : r.lastAckSentNanos();
+        }
+        Arrays.sort(acks);
+        return acks[acks.length - needed];
+    }
+
+    // under lock: a majority heard from us less than readLeaseMs ago, so no other leader can have
+    // been elected yet (followers wait at least ELECTION_TIMEOUT_MIN_MS and refuse votes meanwhile)
+    private boolean holdsLease() {
+        // during a transfer the target is about to be elected without waiting for our lease to lapse
+        if (options.readLeaseMs <= 0 || transferTarget != null) return false;
+        long contact = quorumContactNanos();
+        return contact - leaseFloorNanos >= 0 && System.nanoTime() - contact < TimeUnit.MILLISECONDS.toNanos(options.readLeaseMs);
+    }
+
+    // under lock: wait until cond holds while we stay leader; false on deadline or lost leadership
+    private boolean awaitAsLeader(BooleanSupplier cond, long deadlineNanos) {
+        return await(() -> role != Role.LEADER || cond.getAsBoolean(), deadlineNanos) && role == Role.LEADER;
+    }
+
+    // under lock: wait (releasing the lock) until cond holds; false if the deadline passes first
+    private boolean await(BooleanSupplier cond, long deadlineNanos) {
+        while (true) {
+            if (cond.getAsBoolean()) return true;
+            long left = deadlineNanos - System.nanoTime();
+            if (left <= 0) return false;
+            try {
+                // bounded so a step-down we weren't woken for is still noticed promptly
+                lock.wait(Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(left), 50)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    // try to update commitIndex based on the followers' acknowledged matchIndex
     private void advanceCommitIndex() {
         synchronized (lock) {
-            int N = log.size() - 1;
+            if (role != Role.LEADER) return;
+            int N = log.lastIndex();
             for (int idx = commitIndex + 1; idx <= N; idx++) {
-                int count = 1; // leader itself
-                for (String p : peers) {
-                    Integer m = matchIndex.get(p);
-                    if (m != null && m >= idx) count++;
+                // we count once our own copy is on disk, unless the configuration no longer has us as a voter
+                int count = config.isVoter(nodeId) && durableIndex >= idx ? 1 : 0;
+                for (String p : voterPeers) {
+                    Replicator r = replicators.get(p);
+                    if (r != null && r.matchIndex() >= idx) count++;
                 }
-                if (count > peers.size() / 2 && log.get(idx).term == currentTerm) {
+                if (count >= config.majority() && log.termAt(idx) == currentTerm) {
                     commitIndex = idx;
                 }
             }
+            // stamp newly committed batches for the propose-to-commit and commit-to-apply histograms
+            long now = 0;
+            for (PendingBatch b : pendingBatches) {
+                if (b.lastIndex > commitIndex) break;
+                if (b.committedNanos != 0) continue;
+                if (now == 0) now = System.nanoTime();
+                b.committedNanos = now;
+            }
+            // wake the apply thread, or a transfer or promotion waiting for a follower to catch up
+            if (commitIndex > lastApplied || transferTarget != null || membershipChanging) lock.notifyAll();
         }
-        applyCommitted();
     }
 
-    private void applyCommitted() {
+    // --- Apply pipeline ---
+
+    // The apply thread: copies up to applyBatchMax committed entries under the lock, applies them to
+    // the state machine without it, then publishes the new lastApplied. Votes, heartbeats and
+    // replication only ever wait for the copy, never for the state machine (or its logging).
+    private void runApplier() {
+        while (true) {
+            List<LogEntry> batch = null;
+            ProposalBatcher.Proposal[] owners = null;
+            byte[] restore = null;
+            int first;
+            synchronized (lock) {
+                while (!stopped && restoreData == null && lastApplied >= commitIndex) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (stopped) return;
+                if (restoreData != null) {
+                    restore = restoreData;
+                    first = restoreIndex;
+                    restoreData = null;
+                } else {
+                    first = lastApplied + 1;
+                    batch = log.slice(first, Math.min(commitIndex, lastApplied + options.applyBatchMax) + 1);
+                    owners = proposalsFor(first, batch.size());
+                }
+            }
+            int applied;
+            if (restore != null) {
+                stateMachine.restore(first, restore);
+                applied = first;
+            } else {
+                for (int i = 0; i < batch.size(); i++) {
+                    String outcome = stateMachine.apply(first + i, batch.get(i).command);
+                    if (owners != null && owners[i] != null) owners[i].outcome = outcome;
+                }
+                applied = first + batch.size() - 1;
+                stateMachine.changes().advance(applied); // watchers waiting on these entries
+            }
+            List<PendingBatch> done = new ArrayList<>();
+            synchronized (lock) {
+                lastApplied = applied;
+                lock.notifyAll(); // reads waiting for lastApplied, and proposers held back by the backlog
+                // proposals resolve once their entries are applied, so an OK put is visible to reads
+                while (!pendingBatches.isEmpty() && pendingBatches.peekFirst().lastIndex <= lastApplied) {
+                    done.add(pendingBatches.pollFirst());
+                }
+            }
+            long now = System.nanoTime();
+            for (PendingBatch b : done) {
+                for (ProposalBatcher.Proposal p : b.proposals) {
+                    p.result.complete(p.outcome);
+                    if (b.committedNanos == 0) continue; // never stamped, nothing meaningful to record
+                    metrics.proposeToCommitNanos.record(b.committedNanos - p.submittedNanos);
+                    metrics.commitToApplyNanos.record(now - b.committedNanos);
+                }
+            }
+            stepDownIfRemoved();
+            maybeSnapshot();
+        }
+    }
+
+    // the local proposals behind entries [first, first+count), so the applier can hand each its
+    // result (e.g. CAS_FAILED); null when none are ours, as on a follower. Caller holds the lock.
+    private ProposalBatcher.Proposal[] proposalsFor(int first, int count) {
+        if (pendingBatches.isEmpty()) return null;
+        ProposalBatcher.Proposal[] owners = new ProposalBatcher.Proposal[count];
+        for (PendingBatch b : pendingBatches) {
+            int batchFirst = b.lastIndex - b.proposals.size() + 1;
+            if (batchFirst >= first + count) break;
+            for (int idx = Math.max(first, batchFirst); idx <= b.lastIndex && idx < first + count; idx++) {
+                owners[idx - first] = b.proposals.get(idx - batchFirst);
+            }
+        }
+        return owners;
+    }
+
+    // --- Snapshots & log compaction ---
+
+    // called by the apply thread after applying; snapshots once enough entries piled up since the last one
+    private void maybeSnapshot() {
+        final int index;
+        final int term;
+        final String config;
         synchronized (lock) {
-            while (lastApplied < commitIndex) {
-                lastApplied++;
-                LogEntry entry = log.get(lastApplied);
-                stateMachine.apply(entry.command);
+            if (snapshotting || lastApplied - log.snapshotIndex() < options.snapshotThreshold) return;
+            snapshotting = true;
+            index = lastApplied;
+            term = log.termAt(index);
+            config = configs.floorEntry(index).getValue().encode();
+        }
+        final byte[] data = stateMachine.snapshot(); // only this thread applies, so this is the state at index
+        (options.virtualThreads ? rpcExecutor : scheduler).execute(() -> {
+            try {
+                if (!snapshots.save(index, term, config, data)) return; // an installed snapshot is newer
+                synchronized (lock) {
+                    if (log.snapshotIndex() >= index) return; // compacted past it already
+                    log.compactTo(index, term);
+                    configs.headMap(configs.floorKey(index), false).clear(); // the snapshot's stands for them
+                }
+                wal.compactTo(index);
+            } catch (IOException e) {
+                System.out.println(name + " failed to write snapshot: " + e.getMessage());
+            } finally {
+                synchronized (lock) { snapshotting = false; }
             }
+        });
+    }
+
+    // stream the latest snapshot to a follower whose nextIndex falls inside it
+    void sendSnapshot(Replicator replicator, int leaderTerm) {
+        String peer = replicator.peer();
+        int installed = -1;
+        try {
+            SnapshotStore.Meta snap = snapshots.meta(); // once: every chunk must come from the same file
+            int index = snap.lastIncludedIndex;
+            long offset = 0;
+            while (true) {
+                byte[] chunk = snapshots.readChunk(snap, offset, options.snapshotChunkBytes);
+                if (chunk == null) return; // a newer snapshot replaced it, next heartbeat starts over
+                RpcModels.InstallSnapshotRequest req = new RpcModels.InstallSnapshotRequest();
+                synchronized (lock) {
+                    if (role != Role.LEADER || currentTerm != leaderTerm) return;
+                    req.term = currentTerm;
+                }
+                req.leaderId = nodeId;
+                req.lastIncludedIndex = index;
+                req.lastIncludedTerm = snap.lastIncludedTerm;
+                req.offset = offset;
+                req.data = chunk;
+                req.done = offset + chunk.length >= snap.dataSize;
+                if (req.done) req.config = snap.config;
+                RpcModels.InstallSnapshotResponse resp = client.installSnapshot(peer, groupId, req);
+                if (resp == null) return;
+                if (resp.term > req.term) { stepDownIfTermHigher(resp.term); return; }
+                if (!resp.success) return;
+                offset += chunk.length;
+                if (req.done) {
+                    System.out.println(name + " sent snapshot at index " + index + " to " + peer);
+                    installed = index;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(name + " failed to read snapshot for " + peer + ": " + e.getMessage());
+        } finally {
+            replicator.snapshotFinished(installed);
         }
     }
 
@@ -234,20 +1098,34 @@ public class RaftNode {
                 resp.voteGranted = false;
                 return resp;
             }
+            if (req.preVote) {
+                // answer as we would the real vote for req.term, but change nothing: no term, no votedFor.
+                // While a leader is still reaching us there is no need for a new one.
+                resp.term = currentTerm;
+                resp.voteGranted = req.term > currentTerm && !leaderStillActive() && candidateLogUpToDate(req);
+                return resp;
+            }
+            if (req.term > currentTerm && !req.leadershipTransfer && (options.readLeaseMs > 0 || options.checkQuorum)
+                    && leaderStillActive()) {
+                // a leader may be serving lease reads on the strength of our last ack, and with
+                // check-quorum a leader that still reaches a majority is kept: don't help elect a
+                // replacement until it has certainly gone quiet (unless that leader asked for one)
+                resp.term = currentTerm;
+                resp.voteGranted = false;
+                return resp;
+            }
             // If candidate's term is up to date, grant if we haven't voted or voted for candidate
             if (req.term > currentTerm) {
                 currentTerm = req.term;
                 votedFor = null;
                 role = Role.FOLLOWER;
+                leaderId = null; // until the winner's first AppendEntries
+                persistHardState();
+                lock.notifyAll(); // a deposed leader's waiting reads, proposals and transfer move on
             }
-            boolean logOk = true;
-            int lastIndex = log.size() - 1;
-            int lastTerm = (lastIndex >= 0) ? log.get(lastIndex).term : 0;
-            if (req.lastLogTerm < lastTerm) logOk = false;
-            else if (req.lastLogTerm == lastTerm && req.lastLogIndex < lastIndex) logOk = false;
-
-            if ((votedFor == null || votedFor.equals(req.candidateId)) && logOk) {
+            if ((votedFor == null || votedFor.equals(req.candidateId)) && candidateLogUpToDate(req)) {
                 votedFor = req.candidateId;
+                persistHardState();
                 resp.voteGranted = true;
                 resetElectionTimeout();
             } else {
@@ -258,9 +1136,109 @@ public class RaftNode {
         return resp;
     }
 
+    // under lock: the candidate's log is at least as up to date as ours (Raft's election restriction)
+    private boolean candidateLogUpToDate(RpcModels.RequestVoteRequest req) {
+        int lastTerm = log.lastTerm();
+        if (req.lastLogTerm != lastTerm) return req.lastLogTerm > lastTerm;
+        return req.lastLogIndex >= log.lastIndex();
+    }
+
+    // under lock: we are a leader with a fresh quorum, or a follower that heard from its leader
+    // within the minimum election timeout
+    private boolean leaderStillActive() {
+        long window = TimeUnit.MILLISECONDS.toNanos(ELECTION_TIMEOUT_MIN_MS);
+        if (role == Role.LEADER) return System.nanoTime() - quorumContactNanos() < window;
+        return leaderId != null && System.nanoTime() - lastLeaderContact < window;
+    }
+
+    // called by RaftHttpServer when /timeoutNow arrives: our leader is handing leadership to us
+    // (see transferLeadership), so start an election now rather than after an election timeout
+    public RpcModels.TimeoutNowResponse onTimeoutNow(RpcModels.TimeoutNowRequest req) {
+        RpcModels.TimeoutNowResponse resp = new RpcModels.TimeoutNowResponse();
+        synchronized (lock) {
+            resp.term = currentTerm;
+            resp.success = req.term == currentTerm && role == Role.FOLLOWER && req.leaderId.equals(leaderId);
+            if (!resp.success) return resp;
+            System.out.println(name + " -> leadership handed over by " + req.leaderId);
+        }
+        ExecutorService campaignExecutor = options.virtualThreads ? rpcExecutor : scheduler;
+        campaignExecutor.execute(() -> campaign(true));
+        return resp;
+    }
+
+    // Hand leadership to target (a peer, or null for the most caught-up one), e.g. before restarting
+    // this node: stop appending new proposals, wait until target has our whole log, then send it
+    // TimeoutNow so it is elected within a round trip instead of after an election timeout.
+    // Proposals arriving meanwhile wait in proposeBatch and then get NOT_LEADER:<new leader>, so
+    // none is appended that the new leader could lack. Returns "OK:<target>", NOT_LEADER, or an
+    // error after which we simply carry on as leader.
+    public String transferLeadership(String target, long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Replicator r;
+        int term;
+        boolean timeoutNowSent = false;
+        synchronized (lock) {
+            if (role != Role.LEADER) return notLeader();
+            if (transferTarget != null) return "error: transfer to " + transferTarget + " already in progress";
+            if (target == null) target = mostCaughtUpPeer();
+            r = target == null || !config.isVoter(target) ? null : replicators.get(target);
+            if (r == null) return "error: " + target + " is not a voting peer";
+            transferTarget = target;
+            term = currentTerm;
+            System.out.println(name + " transferring leadership to " + target);
+        }
+        try {
+            r.signal(); // push whatever it still lacks right away
+            synchronized (lock) {
+                if (!awaitAsLeader(() -> r.matchIndex() >= log.lastIndex(), deadline)) {
+                    return role == Role.LEADER ? "error: " + target + " did not catch up in time" : notLeader();
+                }
+            }
+            RpcModels.TimeoutNowRequest req = new RpcModels.TimeoutNowRequest();
+            req.term = term;
+            req.leaderId = nodeId;
+            timeoutNowSent = true;
+            RpcModels.TimeoutNowResponse resp = client.timeoutNow(target, groupId, req);
+            if (resp == null || !resp.success) {
+                if (resp != null) stepDownIfTermHigher(resp.term);
+                return "error: " + target + " did not accept the handover";
+            }
+            // its RequestVote deposes us; wait for its first AppendEntries so waiting proposals
+            // are pointed at it
+            synchronized (lock) {
+                if (!await(() -> role != Role.LEADER && leaderId != null, deadline)) {
+                    return role == Role.LEADER ? "error: " + target + " was not elected in time" : notLeader();
+                }
+                System.out.println(name + " handed leadership to " + leaderId);
+                metrics.leadershipTransfers.increment();
+                return "OK:" + leaderId;
+            }
+        } finally {
+            synchronized (lock) {
+                transferTarget = null;
+                // the target may still be campaigning, and voters grant it without waiting out our
+                // lease: until a majority acks a heartbeat sent from now on, reads need a quorum round
+                if (timeoutNowSent && role == Role.LEADER) leaseFloorNanos = System.nanoTime();
+                lock.notifyAll(); // paused proposals continue, or learn the new leader
+            }
+        }
+    }
+
+    // under lock: the voter with the highest matchIndex, or null if we are the only one
+    private String mostCaughtUpPeer() {
+        Replicator best = null;
+        for (String p : voterPeers) {
+            Replicator r = replicators.get(p);
+            if (r != null && (best == null || r.matchIndex() > best.matchIndex())) best = r;
+        }
+        return best == null ? null : best.peer();
+    }
+
     // called by RaftHttpServer when /appendEntries arrives
     public RpcModels.AppendEntriesResponse onAppendEntries(RpcModels.AppendEntriesRequest req) {
         RpcModels.AppendEntriesResponse resp = new RpcModels.AppendEntriesResponse();
+        long walSeq = 0;
+        int lastNew;
         synchronized (lock) {
             if (req.term < currentTerm) {
                 resp.term = currentTerm;
@@ -269,106 +1247,439 @@ public class RaftNode {
             }
             // become follower for leader's term
             leaderId = req.leaderId;
-            if (req.term > currentTerm) { currentTerm = req.term; votedFor = null; }
+            if (req.term > currentTerm) { currentTerm = req.term; votedFor = null; persistHardState(); }
             role = Role.FOLLOWER;
+            lastLeaderContact = System.nanoTime();
             resetElectionTimeout();
 
-            // Check if log contains entry at prevLogIndex with term prevLogTerm
-            if (req.prevLogIndex >= log.size() || log.get(req.prevLogIndex).term != req.prevLogTerm) {
+            int prevIndex = req.prevLogIndex;
+            List<LogEntry> incoming = req.entries;
+            if (prevIndex < log.snapshotIndex()) {
+                // the start of this batch is already covered by our snapshot (and so committed)
+                int covered = Math.min(incoming.size(), log.snapshotIndex() - prevIndex);
+                incoming = incoming.subList(covered, incoming.size());
+                prevIndex += covered;
+            } else if (prevIndex > log.lastIndex()) {
+                // our log ends before prevLogIndex: the leader can resume right after our last entry
+                resp.term = currentTerm;
+                resp.success = false;
+                resp.conflictTerm = 0;
+                resp.conflictIndex = log.lastIndex() + 1;
+                return resp;
+            } else if (log.termAt(prevIndex) != req.prevLogTerm) {
+                // different term at prevLogIndex: everything we have of that term is suspect
                 resp.term = currentTerm;
                 resp.success = false;
+                resp.conflictTerm = log.termAt(prevIndex);
+                resp.conflictIndex = log.firstIndexOfTerm(prevIndex);
                 return resp;
             }
             // Append any new entries (delete conflicts)
-            int idx = req.prevLogIndex + 1;
+            int idx = prevIndex + 1;
             int i = 0;
-            while (i < req.entries.size()) {
-                if (idx < log.size()) {
-                    if (log.get(idx).term != req.entries.get(i).term) {
-                        // delete conflict and append the rest
-                        while (log.size() > idx) log.remove(log.size()-1);
-                        break;
-                    }
+            while (i < incoming.size() && idx <= log.lastIndex()) {
+                if (log.termAt(idx) != incoming.get(i).term) {
+                    // delete conflict and append the rest
+                    log.truncateFrom(idx);
+                    truncateWal(idx);
+                    configs.tailMap(idx, true).clear(); // back to the configuration before the conflict
+                    break;
                 }
                 idx++; i++;
             }
             // append remaining
-            while (i < req.entries.size()) {
-                log.add(req.entries.get(i));
-                i++;
-            }
-            // update commit index
-            if (req.leaderCommit > commitIndex) {
-                commitIndex = Math.min(req.leaderCommit, log.size()-1);
-                applyCommitted();
+            int firstNew = log.lastIndex() + 1;
+            List<LogEntry> fresh = incoming.subList(i, incoming.size());
+            log.appendAll(fresh);
+            noteConfigs(fresh, firstNew);
+            if (!fresh.isEmpty()) walSeq = appendToWal(fresh, firstNew);
+            lastNew = log.lastIndex();
+            // update commit index, but only as far as this request proved our log matches the leader's
+            leaderCommit = Math.max(leaderCommit, req.leaderCommit);
+            int lastVerified = prevIndex + incoming.size();
+            if (req.leaderCommit > commitIndex && lastVerified > commitIndex) {
+                commitIndex = Math.min(req.leaderCommit, lastVerified);
+                lock.notifyAll(); // wake the apply thread
             }
             resp.term = currentTerm;
             resp.success = true;
         }
+        // only acknowledge once the new entries are durable
+        if (walSeq > 0) syncWal(walSeq, lastNew);
+        return resp;
+    }
+
+    private void truncateWal(int fromIndex) {
+        try {
+            wal.truncateFrom(fromIndex);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to truncate WAL", e);
+        }
+        durableIndex = Math.min(durableIndex, fromIndex - 1);
+    }
+
+    // called by RaftHttpServer when /installSnapshot arrives
+    public RpcModels.InstallSnapshotResponse onInstallSnapshot(RpcModels.InstallSnapshotRequest req) {
+        RpcModels.InstallSnapshotResponse resp = new RpcModels.InstallSnapshotResponse();
+        byte[] data;
+        ClusterConfig snapConfig;
+        synchronized (lock) {
+            if (req.term < currentTerm) {
+                resp.term = currentTerm;
+                resp.success = false;
+                return resp;
+            }
+            leaderId = req.leaderId;
+            if (req.term > currentTerm) { currentTerm = req.term; votedFor = null; persistHardState(); }
+            role = Role.FOLLOWER;
+            lastLeaderContact = System.nanoTime();
+            resetElectionTimeout();
+            resp.term = currentTerm;
+
+            if (req.lastIncludedIndex <= commitIndex) {
+                // we already have everything this snapshot covers
+                pendingSnapshot = null;
+                resp.success = true;
+                return resp;
+            }
+            if (req.offset == 0) {
+                pendingSnapshot = new ByteArrayOutputStream();
+                pendingSnapshotIndex = req.lastIncludedIndex;
+            } else if (pendingSnapshot == null || pendingSnapshotIndex != req.lastIncludedIndex
+                    || pendingSnapshot.size() != req.offset) {
+                resp.success = false; // out of order chunk, leader restarts from offset 0
+                return resp;
+            }
+            pendingSnapshot.writeBytes(req.data);
+            if (!req.done) {
+                resp.success = true;
+                return resp;
+            }
+            data = pendingSnapshot.toByteArray();
+            pendingSnapshot = null;
+            // a leader too old to send the configuration leaves us with the one we have
+            snapConfig = req.config != null ? ClusterConfig.decode(req.config) : config;
+            // one snapshot file write at a time: let one maybeSnapshot started finish first, and
+            // keep it from starting another until this one is in
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.rpcRequestTimeoutMs);
+            if (!await(() -> !snapshotting, deadline)) {
+                resp.success = false; // the leader sends it again
+                return resp;
+            }
+            if (req.lastIncludedIndex <= commitIndex) {
+                resp.success = true; // caught up from the log while we waited
+                return resp;
+            }
+            snapshotting = true;
+        }
+        try {
+            // written (and fsynced) without the lock, as maybeSnapshot does
+            if (!snapshots.save(req.lastIncludedIndex, req.lastIncludedTerm, snapConfig.encode(), data)) {
+                resp.success = false; // ours on disk is at least as new: nothing to install
+                return resp;
+            }
+            synchronized (lock) {
+                if (log.termAt(req.lastIncludedIndex) == req.lastIncludedTerm) {
+                    // our log already has the snapshot's last entry: keep what follows it
+                    log.compactTo(req.lastIncludedIndex, req.lastIncludedTerm);
+                    wal.compactTo(req.lastIncludedIndex);
+                    configs.headMap(req.lastIncludedIndex, true).clear();
+                } else {
+                    log.reset(req.lastIncludedIndex, req.lastIncludedTerm);
+                    wal.reset(req.lastIncludedIndex + 1);
+                    configs.clear();
+                }
+                configs.put(req.lastIncludedIndex, snapConfig);
+                configChanged();
+                if (req.lastIncludedIndex > commitIndex) {
+                    // the apply thread loads it into the state machine and moves lastApplied up to it
+                    restoreData = data;
+                    restoreIndex = req.lastIncludedIndex;
+                    lock.notifyAll();
+                    commitIndex = req.lastIncludedIndex;
+                }
+                leaderCommit = Math.max(leaderCommit, req.lastIncludedIndex);
+                durableIndex = Math.max(durableIndex, req.lastIncludedIndex);
+                System.out.println(name + " installed snapshot at index " + req.lastIncludedIndex);
+                resp.term = currentTerm;
+                resp.success = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to install snapshot", e);
+        } finally {
+            synchronized (lock) { snapshotting = false; }
+        }
         return resp;
     }
 
-    // client-facing: attempt to put metadata (key->value)
+    // client-facing: propose a command. The returned handle completes with its apply result ("OK",
+    // or "CAS_FAILED") once the entry is applied here, "NOT_LEADER:<leaderId>" if we can't propose
+    // it, or "IN_PROGRESS" if we lost leadership before it committed (it may still commit under
+    // the next leader).
+    public CompletableFuture<String> propose(Command command) {
+        synchronized (lock) {
+            if (role != Role.LEADER) return CompletableFuture.completedFuture(notLeader());
+        }
+        // concurrent writes are grouped by the batcher into one append + replication round
+        return batcher.submit(command);
+    }
+
+    public CompletableFuture<String> proposePut(String key, String value) {
+        return propose(Command.put(key, value));
+    }
+
+    // client-facing: attempt to put metadata (key->value), waiting up to --put-timeout-ms for it to apply
     // If not leader, returns "NOT_LEADER:<leaderId>" so client can retry on leader
     public String clientPut(String key, String value) {
+        return clientPut(key, value, options.putTimeoutMs);
+    }
+
+    public String clientPut(String key, String value, long timeoutMs) {
+        return clientWrite(Command.put(key, value), timeoutMs);
+    }
+
+    // propose any command and wait up to timeoutMs for its result, as clientPut does
+    public String clientWrite(Command command, long timeoutMs) {
+        CompletableFuture<String> result = propose(command);
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return "IN_PROGRESS";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "IN_PROGRESS";
+        } catch (ExecutionException e) {
+            return "error: " + e.getCause().getMessage();
+        }
+    }
+
+    private String notLeader() {
+        String leader = leaderId == null ? "" : leaderId;
+        return "NOT_LEADER:" + leader;
+    }
+
+    // Called by the batcher's thread: append the whole batch to our log as consecutive entries,
+    // let the replicators stream it while we fsync it, and complete each proposal when it is applied.
+    void proposeBatch(List<ProposalBatcher.Proposal> batch) {
+        long walSeq;
+        int lastIndex;
         synchronized (lock) {
+            // back-pressure: don't let the log run more than maxUnappliedEntries ahead of the state
+            // machine; while it is, the batcher (and the puts queued behind it) wait
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.putTimeoutMs);
+            // During a leadership transfer nothing new is appended: the target must end up with our whole log.
+            if (!await(() -> role != Role.LEADER
+                    || (transferTarget == null && log.lastIndex() - lastApplied < options.maxUnappliedEntries), deadline)) {
+                String reply = transferTarget != null ? "error: leadership transfer in progress, retry later"
+                        : "error: apply backlog full, retry later";
+                for (ProposalBatcher.Proposal p : batch) p.result.complete(reply);
+                return;
+            }
             if (role != Role.LEADER) {
-                String leader = leaderId == null ? "" : leaderId;
-                return "NOT_LEADER:" + leader;
-            }
-            // append to own log
-            LogEntry entry = new LogEntry(currentTerm, "PUT " + key + " " + value);
-            log.add(entry);
-            int index = log.size() - 1;
-            // after appending locally, leader will try to replicate in background via heartbeats/appendEntries
-            // For simplicity in this prototype we will attempt to replicate to peers synchronously and wait for acks
-        }
-        // naive sync replication: try to ask peers and count acks
-        int successes = 1; // leader itself
-        CountDownLatch latch = new CountDownLatch(peers.size());
-        for (String peer : peers) {
-            scheduler.submit(() -> {
-                RpcModels.AppendEntriesRequest req = buildAppendEntriesRequestForPeer(peer);
-                RpcModels.AppendEntriesResponse r = client.appendEntries(peer, req);
-                if (r != null && r.success) {
-                    synchronized (lock) {
-                        matchIndex.put(peer, log.size() - 1);
-                    }
-                }
-            });
+                String reply = notLeader();
+                for (ProposalBatcher.Proposal p : batch) p.result.complete(reply);
+                return;
+            }
+            int firstIndex = log.lastIndex() + 1;
+            List<LogEntry> entries = new ArrayList<>(batch.size());
+            for (ProposalBatcher.Proposal p : batch) entries.add(new LogEntry(currentTerm, p.command));
+            log.appendAll(entries);
+            noteConfigs(entries, firstIndex);
+            lastIndex = log.lastIndex();
+            walSeq = appendToWal(entries, firstIndex);
+            pendingBatches.addLast(new PendingBatch(lastIndex, batch));
+            metrics.proposeBatchEntries.record(batch.size());
         }
+        signalReplicators();
+        syncWal(walSeq, lastIndex);
+        advanceCommitIndex(); // our own copy may have been the last vote needed
+    }
+
+    public String getMetadata(String key) {
+        return stateMachine.get(key);
+    }
+
+    // client-facing linearizable read. On the leader: take commitIndex as the read index, confirm we
+    // are still leader (a heartbeat round answered by a majority, or a valid lease), wait until
+    // lastApplied reaches the read index, then read locally. Returns "" for a missing key,
+    // "NOT_LEADER:<leaderId>" on followers and "error: ..." if it can't complete in time.
+    public String clientGet(String key) {
+        String failed = linearizableBarrier();
+        if (failed != null) return failed;
+        String value = stateMachine.get(key);
+        return value == null ? "" : value;
+    }
 
-        try { latch.await(300, TimeUnit.MILLISECONDS); } catch (InterruptedException ignored) {}
-        // quick check: recompute how many have this index
+    // waits until reading the local state machine is linearizable (see clientGet); null once it
+    // is, otherwise the reply for the client
+    private String linearizableBarrier() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.readTimeoutMs);
         synchronized (lock) {
-            int index = log.size() - 1;
-            int count = 1;
-            for (String p : peers) {
-                Integer m = matchIndex.get(p);
-                if (m != null && m >= index) count++;
-            }
-            if (count > peers.size() / 2) {
-                // committed
-                commitIndex = index;
-                applyCommitted();
-
-                // NEW: notify followers with updated commit index
-                for (String peer : peers) {
-                    scheduler.submit(() -> {
-                        RpcModels.AppendEntriesRequest req = buildAppendEntriesRequestForPeer(peer);
-                        client.appendEntries(peer, req);
-                    });
+            if (role != Role.LEADER) return notLeader();
+        }
+        int readIndex = confirmReadIndex(deadline);
+        if (readIndex < 0) return readFailed();
+        synchronized (lock) {
+            if (!awaitAsLeader(() -> lastApplied >= readIndex, deadline)) return readFailed();
+        }
+        return null;
+    }
+
+    // leader: the commit index, once a heartbeat round answered by a majority (or a valid lease)
+    // has confirmed we were still leader when we took it; -1 if we aren't, or can't tell in time
+    private int confirmReadIndex(long deadline) {
+        int readIndex;
+        boolean leased;
+        List<Replicator> targets;
+        readsWaiting.incrementAndGet();
+        try {
+            synchronized (lock) {
+                if (role != Role.LEADER) return -1;
+                // a fresh leader doesn't know the commit index until its no-op from becomeLeader commits
+                if (!awaitAsLeader(() -> log.termAt(commitIndex) == currentTerm, deadline)) return -1;
+                readIndex = commitIndex;
+                leased = holdsLease();
+                targets = leased ? List.of() : new ArrayList<>(replicators.values());
+            }
+            if (!leased) {
+                long start = System.nanoTime();
+                for (Replicator r : targets) r.confirmLeadership();
+                synchronized (lock) {
+                    if (!awaitAsLeader(() -> quorumContactNanos() - start >= 0, deadline)) return -1;
                 }
+            }
+            return readIndex;
+        } finally {
+            readsWaiting.decrementAndGet();
+        }
+    }
+
+    // called by RaftHttpServer when /readIndex arrives: a member wants to serve a linearizable read
+    public RpcModels.ReadIndexResponse onReadIndex(RpcModels.ReadIndexRequest req) {
+        stepDownIfTermHigher(req.term); // a member in a newer term: we may be a deposed leader
+        RpcModels.ReadIndexResponse resp = new RpcModels.ReadIndexResponse();
+        resp.readIndex = confirmReadIndex(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.readTimeoutMs));
+        resp.success = resp.readIndex >= 0;
+        synchronized (lock) {
+            resp.term = currentTerm;
+        }
+        return resp;
+    }
 
-                return "OK";
+    // as linearizableBarrier, but on a follower too: it asks the leader for a read index and waits
+    // until it has applied that far, so a read spanning groups led from different members
+    // (RaftHttpServer merges /client/list and /client/batch/get across groups) can be served by
+    // whichever member the client reached
+    private String memberBarrier() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.readTimeoutMs);
+        String leader;
+        RpcModels.ReadIndexRequest req = new RpcModels.ReadIndexRequest();
+        synchronized (lock) {
+            if (role == Role.LEADER) leader = null;
+            else if (role == Role.FOLLOWER && leaderId != null) leader = leaderId;
+            else return notLeader(); // mid-election
+            req.term = currentTerm;
+        }
+        if (leader == null) return linearizableBarrier();
+        RpcModels.ReadIndexResponse resp = client.readIndex(leader, groupId, req);
+        if (resp == null || !resp.success) {
+            if (resp != null) stepDownIfTermHigher(resp.term);
+            return "error: leader " + leader + " could not confirm a read index";
+        }
+        synchronized (lock) {
+            if (!await(() -> lastApplied >= resp.readIndex, deadline)) return "error: read timed out";
+        }
+        return null;
+    }
+
+    // client-facing read that any member may serve, as long as its data is within the given bounds:
+    // maxLagEntries = how many committed entries it may not have applied yet, maxStaleMs = how long ago
+    // a leader (or, on the leader, a majority) last confirmed it is current. A negative bound is not
+    // checked; at least one should be given, otherwise use clientGet. The entry bound is measured
+    // against the last commit index a leader sent us, so pair it with maxStaleMs for a wall-clock
+    // guarantee. Returns "STALE:<leaderId>" when the bounds can't be met so the client can go to the leader.
+    public String clientGetBounded(String key, long maxLagEntries, long maxStaleMs) {
+        String failed = boundedBarrier(maxLagEntries, maxStaleMs);
+        if (failed != null) return failed;
+        String value = stateMachine.get(key);
+        return value == null ? "" : value;
+    }
+
+    // waits until the local state machine is within the given bounds (see clientGetBounded); null
+    // once it is, otherwise the STALE reply for the client
+    private String boundedBarrier(long maxLagEntries, long maxStaleMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.readTimeoutMs);
+        synchronized (lock) {
+            long contactAge;
+            int known;
+            if (role == Role.LEADER) {
+                contactAge = System.nanoTime() - quorumContactNanos();
+                known = commitIndex;
+            } else if (role == Role.FOLLOWER && leaderId != null) {
+                contactAge = System.nanoTime() - lastLeaderContact;
+                known = Math.max(commitIndex, leaderCommit);
             } else {
-                return "IN_PROGRESS";
+                return stale(); // mid-election: we don't know how current we are
             }
-
+            if (maxStaleMs >= 0 && contactAge > TimeUnit.MILLISECONDS.toNanos(maxStaleMs)) return stale();
+            // with only a time bound we still catch up to what the leader had committed when it last
+            // reached us; that is normally a few milliseconds of apply at most
+            long needed = maxLagEntries >= 0 ? known - maxLagEntries : known;
+            if (!await(() -> lastApplied >= needed, deadline)) return stale();
         }
+        return null;
     }
 
-    public String getMetadata(String key) {
-        return stateMachine.get(key);
+    // client-facing: one page of keys in [from, to) that start with prefix, resuming after the key
+    // `after` (a previous page's last key). Linearizable as clientGet, but served by followers as
+    // well (see memberBarrier), or as clientGetBounded when a bound is given (either >= 0). On
+    // failure the page carries the reply in `error`.
+    public MetadataStateMachine.ListPage clientList(String prefix, String from, String to, String after, int limit,
+                                                    long maxLagEntries, long maxStaleMs) {
+        String failed = readBarrier(maxLagEntries, maxStaleMs);
+        if (failed != null) return failedPage(failed);
+        return stateMachine.list(prefix, from, to, after, limit);
+    }
+
+    // client-facing: the values of several keys (null = absent) read in one pass over the state
+    // machine, all as of the same applied index. One barrier covers the whole batch; consistency
+    // as for clientList.
+    public MetadataStateMachine.ListPage clientGetAll(List<String> keys, long maxLagEntries, long maxStaleMs) {
+        String failed = readBarrier(maxLagEntries, maxStaleMs);
+        if (failed != null) return failedPage(failed);
+        return stateMachine.getAll(keys);
+    }
+
+    // client-facing: changes applied on this node to key (or under prefix) from log index
+    // fromIndex on, waiting up to timeoutMs for one if there are none yet. No read barrier: a
+    // watch reports what this node has applied, which on a follower may trail the leader, and
+    // resuming from nextIndex never skips a change whichever member serves the next call.
+    public CompletableFuture<ChangeFeed.Changes> watch(String key, String prefix, int fromIndex, int limit, long timeoutMs) {
+        return stateMachine.changes().watch(key, prefix, fromIndex, limit, timeoutMs);
+    }
+
+    public boolean watchEnabled() {
+        return stateMachine.changes().enabled();
+    }
+
+    // the barrier for reads RaftHttpServer merges across groups, which any member may serve
+    private String readBarrier(long maxLagEntries, long maxStaleMs) {
+        return maxLagEntries < 0 && maxStaleMs < 0 ? memberBarrier() : boundedBarrier(maxLagEntries, maxStaleMs);
+    }
+
+    private static MetadataStateMachine.ListPage failedPage(String reply) {
+        MetadataStateMachine.ListPage page = new MetadataStateMachine.ListPage();
+        page.error = reply;
+        return page;
+    }
+
+    private String stale() {
+        return "STALE:" + (leaderId == null ? "" : leaderId);
+    }
+
+    private String readFailed() {
+        synchronized (lock) {
+            return role == Role.LEADER ? "error: read timed out" : notLeader();
+        }
     }
 }
@@ -0,0 +1,91 @@
+package com.distributed.fs;
+
+// Tunables for a RaftNode. Defaults are what Main uses when no flag is given.
+public class RaftOptions {
+    // --- storage ---
+    public String dataDir = "raft-data";             // WAL + hard state live under dataDir/<nodeId>
+    public long walSegmentBytes = 64L * 1024 * 1024; // roll to a new segment after this many bytes
+    public boolean walGroupCommit = true;            // share one fsync between concurrent appends
+    public int snapshotThreshold = 10000;            // snapshot after this many applied entries
+    public int snapshotChunkBytes = 1024 * 1024;     // InstallSnapshot chunk size
+
+    // --- replication ---
+    public String rpcCodec = "json";                    // "json" or "binary"; every node accepts both
+    public int rpcConnectTimeoutMs = 500;               // TCP connect timeout to a peer
+    public int rpcRequestTimeoutMs = 1000;              // whole-RPC timeout, after which the peer counts as unreachable
+    public int rpcMaxConcurrentPerPeer = 8;             // RPCs in flight to one peer over its pooled connections
+    public int replicationMaxInflight = 4;              // AppendEntries batches outstanding per follower
+    public int replicationMaxBatchEntries = 512;        // entries per AppendEntries
+    public long replicationMaxBatchBytes = 1024 * 1024; // approximate payload bytes per AppendEntries
+    public int rpcCompressMinBytes = 16 * 1024;         // deflate RPC bodies at least this big if the peer accepts it; 0 = never
+    public long rpcMaxRequestBytes = 64L * 1024 * 1024; // largest RPC body we accept (after inflating); bigger ones get 413
+
+    // --- client writes ---
+    public int putBatchMaxSize = 256;  // most client puts folded into one log append
+    public long putBatchLingerMs = 1;  // how long a batch waits for more puts before it is flushed
+    public int putTimeoutMs = 1000;    // how long /client/put waits for its entry to apply before answering IN_PROGRESS
+
+    // --- apply ---
+    public int applyBatchMax = 1024;         // committed entries the apply thread takes per pass
+    public int maxUnappliedEntries = 100000; // leader stops accepting puts while its log is this far ahead of apply
+
+    // --- client reads ---
+    public int readTimeoutMs = 1000; // how long a linearizable read may wait for leadership + apply
+    public int readLeaseMs = 0;      // >0: serve reads from a leader lease this long (must stay well below
+                                     // the 300ms minimum election timeout to absorb clock drift); 0 = ReadIndex only
+
+    // --- watches ---
+    public int watchBufferChanges = 10000; // recent key changes kept for /client/watch; a watcher further
+                                           // behind than this is told to resync; 0 disables watches
+
+    // --- elections ---
+    public boolean preVote = true;     // a node asks whether it could win before bumping its term
+    public boolean checkQuorum = true; // a leader that can't reach a majority for an election timeout steps
+                                       // down, and followers refuse votes while their leader is active
+
+    // --- membership ---
+    public boolean join = false; // start with no configuration and wait to be added (as a learner) by the
+                                 // leader through /admin/members, instead of forming a group with --peers
+
+    // --- threading ---
+    public boolean virtualThreads = false; // peer RPCs and vote rounds on virtual threads, a thread per HTTP
+                                           // request; the scheduler pool then only fires timers
+
+    // --- sharding ---
+    public int groups = 1; // Raft groups per process, keys hash-partitioned across them; must be the same
+                           // on every node and never change for a data dir, or keys land in the wrong group
+
+    public static RaftOptions fromArgs(String[] args) {
+        RaftOptions o = new RaftOptions();
+        for (String arg : args) {
+            if (arg.startsWith("--data-dir=")) o.dataDir = arg.substring("--data-dir=".length());
+            if (arg.startsWith("--wal-segment-bytes=")) o.walSegmentBytes = Long.parseLong(arg.substring("--wal-segment-bytes=".length()));
+            if (arg.startsWith("--wal-group-commit=")) o.walGroupCommit = Boolean.parseBoolean(arg.substring("--wal-group-commit=".length()));
+            if (arg.startsWith("--snapshot-threshold=")) o.snapshotThreshold = Integer.parseInt(arg.substring("--snapshot-threshold=".length()));
+            if (arg.startsWith("--snapshot-chunk-bytes=")) o.snapshotChunkBytes = Integer.parseInt(arg.substring("--snapshot-chunk-bytes=".length()));
+            if (arg.startsWith("--rpc-codec=")) o.rpcCodec = arg.substring("--rpc-codec=".length());
+            if (arg.startsWith("--rpc-connect-timeout-ms=")) o.rpcConnectTimeoutMs = Integer.parseInt(arg.substring("--rpc-connect-timeout-ms=".length()));
+            if (arg.startsWith("--rpc-request-timeout-ms=")) o.rpcRequestTimeoutMs = Integer.parseInt(arg.substring("--rpc-request-timeout-ms=".length()));
+            if (arg.startsWith("--rpc-max-concurrent-per-peer=")) o.rpcMaxConcurrentPerPeer = Integer.parseInt(arg.substring("--rpc-max-concurrent-per-peer=".length()));
+            if (arg.startsWith("--replication-max-inflight=")) o.replicationMaxInflight = Integer.parseInt(arg.substring("--replication-max-inflight=".length()));
+            if (arg.startsWith("--replication-max-batch-entries=")) o.replicationMaxBatchEntries = Integer.parseInt(arg.substring("--replication-max-batch-entries=".length()));
+            if (arg.startsWith("--replication-max-batch-bytes=")) o.replicationMaxBatchBytes = Long.parseLong(arg.substring("--replication-max-batch-bytes=".length()));
+            if (arg.startsWith("--rpc-compress-min-bytes=")) o.rpcCompressMinBytes = Integer.parseInt(arg.substring("--rpc-compress-min-bytes=".length()));
+            if (arg.startsWith("--rpc-max-request-bytes=")) o.rpcMaxRequestBytes = Long.parseLong(arg.substring("--rpc-max-request-bytes=".length()));
+            if (arg.startsWith("--put-batch-max=")) o.putBatchMaxSize = Integer.parseInt(arg.substring("--put-batch-max=".length()));
+            if (arg.startsWith("--put-batch-linger-ms=")) o.putBatchLingerMs = Long.parseLong(arg.substring("--put-batch-linger-ms=".length()));
+            if (arg.startsWith("--put-timeout-ms=")) o.putTimeoutMs = Integer.parseInt(arg.substring("--put-timeout-ms=".length()));
+            if (arg.startsWith("--apply-batch-max=")) o.applyBatchMax = Integer.parseInt(arg.substring("--apply-batch-max=".length()));
+            if (arg.startsWith("--max-unapplied-entries=")) o.maxUnappliedEntries = Integer.parseInt(arg.substring("--max-unapplied-entries=".length()));
+            if (arg.startsWith("--read-timeout-ms=")) o.readTimeoutMs = Integer.parseInt(arg.substring("--read-timeout-ms=".length()));
+            if (arg.startsWith("--read-lease-ms=")) o.readLeaseMs = Integer.parseInt(arg.substring("--read-lease-ms=".length()));
+            if (arg.startsWith("--watch-buffer-changes=")) o.watchBufferChanges = Integer.parseInt(arg.substring("--watch-buffer-changes=".length()));
+            if (arg.startsWith("--pre-vote=")) o.preVote = Boolean.parseBoolean(arg.substring("--pre-vote=".length()));
+            if (arg.startsWith("--check-quorum=")) o.checkQuorum = Boolean.parseBoolean(arg.substring("--check-quorum=".length()));
+            if (arg.startsWith("--join=")) o.join = Boolean.parseBoolean(arg.substring("--join=".length()));
+            if (arg.startsWith("--virtual-threads=")) o.virtualThreads = Boolean.parseBoolean(arg.substring("--virtual-threads=".length()));
+            if (arg.startsWith("--groups=")) o.groups = Integer.parseInt(arg.substring("--groups=".length()));
+        }
+        return o;
+    }
+}
@@ -0,0 +1,23 @@
+package com.distributed.fs;
+
+// How a node reaches its peers for Raft RPCs. RaftClient sends them over HTTP to the peer's
+// RaftHttpServer; InMemoryRaftTransport hands them straight to RaftNodes in the same JVM, so the
+// consensus core can be run and measured without sockets or a wire format.
+//
+// Every call blocks until the peer answered and returns null if it couldn't be reached, timed
+// out or is overloaded; callers treat all of those alike. group is the Raft group on the peer
+// (see RaftGroups).
+public interface RaftTransport {
+    RpcModels.RequestVoteResponse requestVote(String peer, int group, RpcModels.RequestVoteRequest req);
+
+    RpcModels.AppendEntriesResponse appendEntries(String peer, int group, RpcModels.AppendEntriesRequest req);
+
+    RpcModels.InstallSnapshotResponse installSnapshot(String peer, int group, RpcModels.InstallSnapshotRequest req);
+
+    RpcModels.TimeoutNowResponse timeoutNow(String peer, int group, RpcModels.TimeoutNowRequest req);
+
+    RpcModels.ReadIndexResponse readIndex(String peer, int group, RpcModels.ReadIndexRequest req);
+
+    // RaftGroups' shared heartbeat, covering every group the sender leads
+    RpcModels.HeartbeatResponse heartbeat(String peer, RpcModels.HeartbeatRequest req);
+}
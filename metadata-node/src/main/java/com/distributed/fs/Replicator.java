@@ -0,0 +1,194 @@
+package com.distributed.fs;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// Streams the leader's log to one follower. New entries go out as soon as they are appended
+// (signal()), up to maxInflight AppendEntries batches may be outstanding at once, and
+// matchIndex only moves when the follower acknowledges a batch. Until the follower has accepted
+// one AppendEntries in this term (or after it rejects one) we don't know where its log ends,
+// so only one request is outstanding while we probe for that point.
+//
+// One Replicator exists per follower per leader term. RaftNode never calls into it while
+// holding its own lock, so the lock order is always Replicator -> RaftNode.lock.
+public class Replicator {
+    private final RaftNode node;
+    private final String peer;
+    private final int term;
+    private final RaftTransport client;
+    private final Executor rpcExecutor;
+    private final int maxInflight;
+    private final int maxBatchEntries;
+    private final long maxBatchBytes;
+
+    private int nextToSend;          // next index to put on the wire (runs ahead of matchIndex)
+    private volatile int matchIndex; // highest index the follower has acknowledged
+    private int inflight = 0;
+    private int generation = 0;      // bumped on every rewind so stale replies are ignored
+    private boolean paused = false;  // follower unreachable: wait for the next heartbeat before retrying
+    private boolean probing = true;  // follower's log end unknown: one request at a time, no pipelining
+    private boolean installingSnapshot = false;
+    private boolean probeRequested = false; // a read is waiting for proof that we are still leader
+    private volatile boolean stopped = false;
+    private volatile long lastAckSentNanos; // send time of the newest request it answered in our term
+
+    public Replicator(RaftNode node, String peer, int term, int nextIndex, RaftTransport client,
+                      Executor rpcExecutor, RaftOptions options) {
+        this.node = node;
+        this.peer = peer;
+        this.term = term;
+        this.client = client;
+        this.rpcExecutor = rpcExecutor;
+        this.nextToSend = nextIndex;
+        this.matchIndex = 0;
+        this.lastAckSentNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1); // "never"
+        this.maxInflight = options.replicationMaxInflight;
+        this.maxBatchEntries = options.replicationMaxBatchEntries;
+        this.maxBatchBytes = options.replicationMaxBatchBytes;
+    }
+
+    public String peer() { return peer; }
+    public int matchIndex() { return matchIndex; }
+    public long lastAckSentNanos() { return lastAckSentNanos; }
+    public void stop() { stopped = true; }
+
+    // new entries were appended: push them out now rather than on the next heartbeat
+    public void signal() {
+        if (!stopped) rpcExecutor.execute(() -> pump(false));
+    }
+
+    // heartbeat tick: make sure the follower hears from us (and learns the commit index) even if idle
+    public void heartbeat() {
+        if (stopped) return;
+        synchronized (this) { paused = false; }
+        rpcExecutor.execute(() -> pump(true));
+    }
+
+    // heartbeat tick when RaftGroups sends the shared heartbeat: only retry/resume replication
+    public void tick() {
+        if (stopped) return;
+        synchronized (this) { paused = false; }
+        rpcExecutor.execute(() -> pump(false));
+    }
+
+    // the follower answered a shared heartbeat sent at sentAt in ackTerm
+    public void onHeartbeatAck(int ackTerm, long sentAt) {
+        if (ackTerm != term) return;
+        synchronized (this) {
+            if (sentAt - lastAckSentNanos > 0) lastAckSentNanos = sentAt;
+        }
+    }
+
+    // ReadIndex: send an AppendEntries now (or as soon as a slot frees up) so its reply shows
+    // whether this follower still recognises us as leader
+    public void confirmLeadership() {
+        if (stopped) return;
+        synchronized (this) { probeRequested = true; }
+        rpcExecutor.execute(() -> pump(false));
+    }
+
+    private void pump(boolean forceSend) {
+        while (true) {
+            RpcModels.AppendEntriesRequest req;
+            int gen;
+            synchronized (this) {
+                if (stopped || paused || installingSnapshot) return;
+                if (inflight >= (probing ? 1 : maxInflight)) return;
+                if (!forceSend && !probeRequested && nextToSend > node.lastLogIndex()) return;
+                req = node.buildAppendEntries(term, nextToSend, maxBatchEntries, maxBatchBytes);
+                if (req == null) { stopped = true; return; } // no longer leader for this term
+                if (req == RaftNode.NEEDS_SNAPSHOT) {
+                    installingSnapshot = true;
+                    rpcExecutor.execute(() -> node.sendSnapshot(this, term));
+                    return;
+                }
+                nextToSend += req.entries.size();
+                inflight++;
+                probeRequested = false;
+                gen = generation;
+            }
+            final RpcModels.AppendEntriesRequest sent = req;
+            final long sentAt = System.nanoTime();
+            rpcExecutor.execute(() -> onResponse(gen, sentAt, sent, client.appendEntries(peer, node.groupId(), sent)));
+            forceSend = false;
+        }
+    }
+
+    private void onResponse(int gen, long sentAt, RpcModels.AppendEntriesRequest req, RpcModels.AppendEntriesResponse resp) {
+        boolean advanced = false;
+        RaftMetrics metrics = node.metrics();
+        if (resp == null) {
+            metrics.appendEntriesFailures.increment();
+        } else {
+            metrics.appendEntriesNanos.record(System.nanoTime() - sentAt);
+            metrics.appendEntriesEntries.record(req.entries.size());
+        }
+        synchronized (this) {
+            inflight--;
+            if (stopped) return;
+            if (resp == null) {
+                // unreachable: resend from this request on after the next heartbeat. If the follower
+                // lost more than that (e.g. it restarted), its rejection carries hints to go further back.
+                if (gen == generation) rewind(req.prevLogIndex + 1);
+                probing = true;
+                paused = true;
+                return;
+            }
+            if (resp.term <= term && sentAt - lastAckSentNanos > 0) {
+                // any reply in our term, even a log mismatch, means the follower still follows us
+                lastAckSentNanos = sentAt;
+            }
+            if (resp.term > term) {
+                stopped = true;
+            } else if (resp.success) {
+                if (gen == generation) probing = false;
+                int acked = req.prevLogIndex + req.entries.size();
+                if (acked > matchIndex) {
+                    matchIndex = acked;
+                    advanced = true;
+                }
+            } else if (gen == generation) {
+                probing = true;
+                metrics.appendEntriesRejections.increment();
+                if (resp.conflictIndex > 0) {
+                    // jump straight past the follower's conflicting term (or to the end of its log)
+                    rewind(Math.min(req.prevLogIndex, node.nextIndexAfterConflict(resp.conflictTerm, resp.conflictIndex)));
+                } else {
+                    // peer sent no hints: back up one entry and try again
+                    rewind(Math.max(1, req.prevLogIndex));
+                }
+            }
+        }
+        if (resp.term > term) {
+            node.stepDownIfTermHigher(resp.term);
+            return;
+        }
+        node.onLeaderContact();
+        if (advanced) node.onFollowerAcked();
+        pump(false);
+    }
+
+    private void rewind(int next) {
+        generation++;
+        nextToSend = Math.max(matchIndex + 1, next);
+    }
+
+    // called by RaftNode.sendSnapshot when the transfer ends; snapshotIndex < 0 means it failed
+    public void snapshotFinished(int snapshotIndex) {
+        synchronized (this) {
+            installingSnapshot = false;
+            if (snapshotIndex >= 0) {
+                generation++;
+                probing = false;
+                if (snapshotIndex > matchIndex) matchIndex = snapshotIndex;
+                nextToSend = snapshotIndex + 1;
+            } else {
+                paused = true;
+            }
+        }
+        if (snapshotIndex >= 0) {
+            node.onFollowerAcked();
+            pump(false);
+        }
+    }
+}
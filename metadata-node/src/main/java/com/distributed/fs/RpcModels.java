@@ -8,6 +8,8 @@ public class RpcModels {
         public String candidateId;
         public int lastLogIndex;
         public int lastLogTerm;
+        public boolean preVote; // only asking whether we would get the vote for term; nobody changes state
+        public boolean leadershipTransfer; // the current leader asked for this election (TimeoutNow)
     }
     public static class RequestVoteResponse {
         public int term;
@@ -25,5 +27,66 @@ public class RpcModels {
     public static class AppendEntriesResponse {
         public int term;
         public boolean success;
+        // on a log mismatch: the follower's term at prevLogIndex (0 if its log ends before it) and the
+        // first index it holds of that term (or its lastIndex + 1), so the leader can skip a whole
+        // term per round trip instead of one entry. 0/0 from nodes that don't send hints.
+        public int conflictTerm;
+        public int conflictIndex;
+    }
+
+    // sent in chunks to a follower whose nextIndex is older than the leader's snapshot
+    public static class InstallSnapshotRequest {
+        public int term;
+        public String leaderId;
+        public int lastIncludedIndex;
+        public int lastIncludedTerm;
+        public long offset;   // byte offset of this chunk within the snapshot
+        public byte[] data;   // chunk (base64 in JSON)
+        public boolean done;  // true on the last chunk
+        public String config; // last chunk: the ClusterConfig at lastIncludedIndex, encoded
+    }
+    public static class InstallSnapshotResponse {
+        public int term;
+        public boolean success;
+    }
+
+    // leadership transfer: the leader tells a caught-up follower to start an election immediately
+    public static class TimeoutNowRequest {
+        public int term;
+        public String leaderId;
+    }
+    public static class TimeoutNowResponse {
+        public int term;
+        public boolean success; // false if the follower is not in term under leaderId
+    }
+
+    // follower reads: a member asks its leader for an index it may serve a linearizable read at
+    // once it has applied that far (ReadIndex, as the leader does for its own reads)
+    public static class ReadIndexRequest {
+        public int term;
+    }
+    public static class ReadIndexResponse {
+        public int term;
+        public boolean success; // false if the peer is not leader, or couldn't confirm it in time
+        public int readIndex;
+    }
+
+    // multi-group mode: one message per follower carries the heartbeat of every group we lead
+    public static class HeartbeatRequest {
+        public String leaderId;
+        public List<GroupHeartbeat> groups;
+    }
+    public static class GroupHeartbeat {
+        public int group;
+        public int term;
+        public int commitIndex; // capped at the follower's matchIndex, so it never commits entries it doesn't have
+    }
+    public static class HeartbeatResponse {
+        public List<GroupHeartbeatAck> groups;
+    }
+    public static class GroupHeartbeatAck {
+        public int group;
+        public int term;
+        public boolean success;
     }
 }
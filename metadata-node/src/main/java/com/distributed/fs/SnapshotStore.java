@@ -0,0 +1,117 @@
+package com.distributed.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// Keeps the latest state machine snapshot on disk as one file:
+// [-2][lastIncludedIndex][lastIncludedTerm][configLength][config][data], where config is the
+// ClusterConfig in effect at lastIncludedIndex. Files from before membership changes are
+// [lastIncludedIndex][lastIncludedTerm][data] (an index is never negative, so the two can't be confused).
+// A new snapshot is written to a temp file and renamed over the old one, so there is always a complete one.
+// What is known about the file on disk is published as one immutable Meta, so a reader never pairs
+// one snapshot's index with another's term, config or data offset.
+public class SnapshotStore {
+    private static final String SNAPSHOT_FILE = "snapshot";
+    private static final int FORMAT_WITH_CONFIG = -2;
+    private static final int OLD_HEADER_BYTES = 8;
+
+    public static class Snapshot {
+        public int lastIncludedIndex;
+        public int lastIncludedTerm;
+        public String config; // encoded ClusterConfig, null in old snapshots
+        public byte[] data;
+    }
+
+    // the snapshot currently on disk; replaced, never modified
+    public static final class Meta {
+        static final Meta NONE = new Meta(0, 0, null, OLD_HEADER_BYTES, 0);
+
+        public final int lastIncludedIndex;
+        public final int lastIncludedTerm;
+        public final String config;
+        public final long dataSize;
+        final int headerBytes; // where data starts in the file
+
+        Meta(int lastIncludedIndex, int lastIncludedTerm, String config, int headerBytes, long dataSize) {
+            this.lastIncludedIndex = lastIncludedIndex;
+            this.lastIncludedTerm = lastIncludedTerm;
+            this.config = config;
+            this.headerBytes = headerBytes;
+            this.dataSize = dataSize;
+        }
+    }
+
+    private final Path file;
+    private volatile Meta meta = Meta.NONE;
+
+    public SnapshotStore(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        this.file = dir.resolve(SNAPSHOT_FILE);
+    }
+
+    public Meta meta() { return meta; }
+
+    // null when no snapshot has been taken yet
+    public Snapshot load() throws IOException {
+        if (!Files.exists(file)) return null;
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        Snapshot s = new Snapshot();
+        int first = buf.getInt();
+        if (first == FORMAT_WITH_CONFIG) {
+            s.lastIncludedIndex = buf.getInt();
+            s.lastIncludedTerm = buf.getInt();
+            byte[] config = new byte[buf.getInt()];
+            buf.get(config);
+            s.config = new String(config, StandardCharsets.UTF_8);
+        } else {
+            s.lastIncludedIndex = first;
+            s.lastIncludedTerm = buf.getInt();
+        }
+        int headerBytes = buf.position();
+        s.data = new byte[buf.remaining()];
+        buf.get(s.data);
+        meta = new Meta(s.lastIncludedIndex, s.lastIncludedTerm, s.config, headerBytes, s.data.length);
+        return s;
+    }
+
+    // false, writing nothing, when the snapshot on disk is already at index or past it: an
+    // older one must never replace a newer one the log was compacted to
+    public synchronized boolean save(int index, int term, String config, byte[] data) throws IOException {
+        if (index <= meta.lastIncludedIndex) return false;
+        Path tmp = file.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        byte[] configBytes = config.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer hdr = ByteBuffer.allocate(16 + configBytes.length)
+                .putInt(FORMAT_WITH_CONFIG).putInt(index).putInt(term).putInt(configBytes.length).put(configBytes);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            hdr.flip();
+            ch.write(hdr);
+            ByteBuffer body = ByteBuffer.wrap(data);
+            while (body.hasRemaining()) ch.write(body);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        meta = new Meta(index, term, config, hdr.capacity(), data.length);
+        return true;
+    }
+
+    // Reads up to maxBytes of snapshot data starting at offset (used to stream InstallSnapshot chunks).
+    // Returns null if expected, the snapshot the caller started sending, has been replaced since.
+    public synchronized byte[] readChunk(Meta expected, long offset, int maxBytes) throws IOException {
+        if (expected != meta) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long remaining = expected.dataSize - offset;
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.max(0, Math.min(maxBytes, remaining)));
+            long pos = expected.headerBytes + offset;
+            while (buf.hasRemaining()) {
+                int n = ch.read(buf, pos);
+                if (n < 0) break;
+                pos += n;
+            }
+            return buf.array();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every RPC model survives BinaryRaftCodec unchanged, including the edges of each field
+// (null and non-ASCII strings, no entries, one very large entry), and frames that are cut short
+// or not ours are rejected with an IOException rather than misread.
+class BinaryRaftCodecTest {
+    private final BinaryRaftCodec codec = new BinaryRaftCodec();
+
+    @Test
+    void appendEntriesRequestRoundTrip() throws IOException {
+        RpcModels.AppendEntriesRequest req = new RpcModels.AppendEntriesRequest();
+        req.term = 7;
+        req.leaderId = "localhost:8001";
+        req.prevLogIndex = 41;
+        req.prevLogTerm = 6;
+        req.leaderCommit = 40;
+        req.entries = List.of(new LogEntry(7, "PUT /a 1"), new LogEntry(7, "PUT /ключ значение"));
+        RpcModels.AppendEntriesRequest back = roundTrip(req, RpcModels.AppendEntriesRequest.class);
+        assertEquals(7, back.term);
+        assertEquals("localhost:8001", back.leaderId);
+        assertEquals(41, back.prevLogIndex);
+        assertEquals(6, back.prevLogTerm);
+        assertEquals(40, back.leaderCommit);
+        assertEquals(2, back.entries.size());
+        assertEquals(7, back.entries.get(1).term);
+        assertEquals("PUT /ключ значение", utf8(back.entries.get(1).command));
+    }
+
+    @Test
+    void commandBytesAreCopiedAsTheyAre() throws IOException {
+        byte[] command = Command.put("/a".getBytes(StandardCharsets.UTF_8), new byte[]{0, (byte) 0xff, (byte) 0xc3}).encode();
+        RpcModels.AppendEntriesRequest req = new RpcModels.AppendEntriesRequest();
+        req.entries = List.of(new LogEntry(2, command));
+        assertArrayEquals(command, roundTrip(req, RpcModels.AppendEntriesRequest.class).entries.get(0).command);
+    }
+
+    @Test
+    void heartbeatWithNoEntriesOrLeaderRoundTrips() throws IOException {
+        RpcModels.AppendEntriesRequest req = new RpcModels.AppendEntriesRequest();
+        req.term = 1;
+        RpcModels.AppendEntriesRequest back = roundTrip(req, RpcModels.AppendEntriesRequest.class);
+        assertNull(back.leaderId);
+        assertEquals(List.of(), back.entries); // null entries go out as an empty list
+    }
+
+    @Test
+    void largeEntryRoundTrips() throws IOException {
+        String big = "PUT /big " + "x".repeat(4 * 1024 * 1024);
+        List<LogEntry> entries = new ArrayList<>();
+        entries.add(new LogEntry(3, ""));
+        entries.add(new LogEntry(3, big));
+        RpcModels.AppendEntriesRequest req = new RpcModels.AppendEntriesRequest();
+        req.entries = entries;
+        RpcModels.AppendEntriesRequest back = roundTrip(req, RpcModels.AppendEntriesRequest.class);
+        assertEquals(0, back.entries.get(0).command.length);
+        assertEquals(big, utf8(back.entries.get(1).command));
+        // the scratch buffer grew for the big frame; a small one after it still comes out right
+        assertEquals("y", utf8(roundTrip(entry("y"), RpcModels.AppendEntriesRequest.class).entries.get(0).command));
+    }
+
+    @Test
+    void responsesRoundTrip() throws IOException {
+        RpcModels.AppendEntriesResponse ae = new RpcModels.AppendEntriesResponse();
+        ae.term = 9;
+        ae.conflictTerm = 8;
+        ae.conflictIndex = 120;
+        RpcModels.AppendEntriesResponse aeBack = roundTrip(ae, RpcModels.AppendEntriesResponse.class);
+        assertEquals(9, aeBack.term);
+        assertFalse(aeBack.success);
+        assertEquals(8, aeBack.conflictTerm);
+        assertEquals(120, aeBack.conflictIndex);
+
+        RpcModels.RequestVoteResponse vote = new RpcModels.RequestVoteResponse();
+        vote.term = 4;
+        vote.voteGranted = true;
+        RpcModels.RequestVoteResponse voteBack = roundTrip(vote, RpcModels.RequestVoteResponse.class);
+        assertEquals(4, voteBack.term);
+        assertTrue(voteBack.voteGranted);
+
+        RpcModels.InstallSnapshotResponse snap = new RpcModels.InstallSnapshotResponse();
+        snap.term = 2;
+        RpcModels.InstallSnapshotResponse snapBack = roundTrip(snap, RpcModels.InstallSnapshotResponse.class);
+        assertEquals(2, snapBack.term);
+        assertFalse(snapBack.success);
+    }
+
+    @Test
+    void requestVoteRoundTrip() throws IOException {
+        RpcModels.RequestVoteRequest req = new RpcModels.RequestVoteRequest();
+        req.term = 12;
+        req.candidateId = "localhost:8003";
+        req.lastLogIndex = Integer.MAX_VALUE;
+        req.lastLogTerm = 11;
+        req.preVote = true;
+        req.leadershipTransfer = true;
+        RpcModels.RequestVoteRequest back = roundTrip(req, RpcModels.RequestVoteRequest.class);
+        assertEquals(12, back.term);
+        assertEquals("localhost:8003", back.candidateId);
+        assertEquals(Integer.MAX_VALUE, back.lastLogIndex);
+        assertEquals(11, back.lastLogTerm);
+        assertTrue(back.preVote);
+        assertTrue(back.leadershipTransfer);
+    }
+
+    @Test
+    void timeoutNowRoundTrip() throws IOException {
+        RpcModels.TimeoutNowRequest req = new RpcModels.TimeoutNowRequest();
+        req.term = 3;
+        req.leaderId = "localhost:8001";
+        RpcModels.TimeoutNowRequest back = roundTrip(req, RpcModels.TimeoutNowRequest.class);
+        assertEquals(3, back.term);
+        assertEquals("localhost:8001", back.leaderId);
+
+        RpcModels.TimeoutNowResponse resp = new RpcModels.TimeoutNowResponse();
+        resp.term = 3;
+        resp.success = true;
+        RpcModels.TimeoutNowResponse respBack = roundTrip(resp, RpcModels.TimeoutNowResponse.class);
+        assertEquals(3, respBack.term);
+        assertTrue(respBack.success);
+    }
+
+    @Test
+    void installSnapshotRequestRoundTrip() throws IOException {
+        RpcModels.InstallSnapshotRequest req = new RpcModels.InstallSnapshotRequest();
+        req.term = 5;
+        req.leaderId = "localhost:8002";
+        req.lastIncludedIndex = 1000;
+        req.lastIncludedTerm = 4;
+        req.offset = 3L << 32; // offsets are longs
+        req.data = new byte[]{0, (byte) 0xff, 's', 'n', 'a', 'p'}; // sent as it is, not as base64
+        req.done = true;
+        req.config = new ClusterConfig(List.of("localhost:8001", "localhost:8002"), List.of("localhost:8003")).encode();
+        RpcModels.InstallSnapshotRequest back = roundTrip(req, RpcModels.InstallSnapshotRequest.class);
+        assertEquals(5, back.term);
+        assertEquals("localhost:8002", back.leaderId);
+        assertEquals(1000, back.lastIncludedIndex);
+        assertEquals(4, back.lastIncludedTerm);
+        assertEquals(3L << 32, back.offset);
+        assertArrayEquals(req.data, back.data);
+        assertTrue(back.done);
+        assertEquals(req.config, back.config);
+    }
+
+    @Test
+    void readIndexRoundTrip() throws IOException {
+        RpcModels.ReadIndexRequest req = new RpcModels.ReadIndexRequest();
+        req.term = 6;
+        assertEquals(6, roundTrip(req, RpcModels.ReadIndexRequest.class).term);
+
+        RpcModels.ReadIndexResponse resp = new RpcModels.ReadIndexResponse();
+        resp.term = 6;
+        resp.success = true;
+        resp.readIndex = 4321;
+        RpcModels.ReadIndexResponse back = roundTrip(resp, RpcModels.ReadIndexResponse.class);
+        assertEquals(6, back.term);
+        assertTrue(back.success);
+        assertEquals(4321, back.readIndex);
+    }
+
+    @Test
+    void versionOneSnapshotChunkIsStillRead() throws IOException {
+        byte[] base64 = "c25hcA==".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer v1 = ByteBuffer.allocate(39 + base64.length);
+        v1.putInt(v1.capacity() - 4).put((byte) 1).put((byte) 5);
+        v1.putInt(5).putInt(-1).putInt(1000).putInt(4).putLong(0);
+        v1.putInt(base64.length).put(base64);
+        v1.put((byte) 1).putInt(-1);
+        RpcModels.InstallSnapshotRequest back = decode(v1.array(), RpcModels.InstallSnapshotRequest.class);
+        assertEquals(1000, back.lastIncludedIndex);
+        assertEquals("snap", utf8(back.data));
+        assertTrue(back.done);
+    }
+
+    @Test
+    void stringsTakeOnlyTheRoomTheirBytesNeed() {
+        BinaryRaftCodec.Buffer b = new BinaryRaftCodec.Buffer(8192);
+        String big = "x".repeat(1024 * 1024);
+        b.putString(big);
+        assertEquals(4 + big.length(), b.size());
+        // sized for three bytes a char it would outgrow the pooled buffers and be dropped
+        assertTrue(b.array().length <= 2 * 1024 * 1024, b.array().length + " bytes");
+        b.reset();
+        b.putString("ключ");
+        assertEquals(4 + 8, b.size());
+    }
+
+    @Test
+    void truncatedFrameIsRejected() throws IOException {
+        byte[] frame = encode(entry("PUT /a 1"));
+        for (int cut : new int[]{0, 2, 4, frame.length - 1}) {
+            byte[] part = Arrays.copyOf(frame, cut);
+            assertThrows(EOFException.class,
+                    () -> codec.decode(new ByteArrayInputStream(part), RpcModels.AppendEntriesRequest.class));
+        }
+    }
+
+    @Test
+    void unknownVersionTypeOrLengthIsRejected() throws IOException {
+        byte[] frame = encode(entry("PUT /a 1"));
+        byte[] version = frame.clone();
+        version[4] = 99;
+        assertThrows(IOException.class, () -> decode(version, RpcModels.AppendEntriesRequest.class));
+        byte[] kind = frame.clone();
+        kind[5] = 99;
+        assertThrows(IOException.class, () -> decode(kind, RpcModels.AppendEntriesRequest.class));
+        byte[] length = frame.clone();
+        ByteBuffer.wrap(length).putInt(1);
+        assertThrows(IOException.class, () -> decode(length, RpcModels.AppendEntriesRequest.class));
+        assertThrows(IOException.class, () -> decode(frame, RpcModels.RequestVoteRequest.class)); // wrong type
+    }
+
+    @Test
+    void frameOverTheLimitIsRefusedUnread() throws IOException {
+        BinaryRaftCodec small = new BinaryRaftCodec(1024);
+        byte[] header = ByteBuffer.allocate(6).putInt(Integer.MAX_VALUE).put(BinaryRaftCodec.VERSION).put((byte) 3).array();
+        assertThrows(RaftCodec.TooLargeException.class,
+                () -> small.decode(new ByteArrayInputStream(header), RpcModels.AppendEntriesRequest.class));
+        byte[] big = encode(entry("x".repeat(1024)));
+        assertThrows(RaftCodec.TooLargeException.class,
+                () -> small.decode(new ByteArrayInputStream(big), RpcModels.AppendEntriesRequest.class));
+        byte[] fits = encode(entry("x".repeat(900)));
+        assertEquals(900, small.decode(new ByteArrayInputStream(fits), RpcModels.AppendEntriesRequest.class)
+                .entries.get(0).command.length);
+    }
+
+    @Test
+    void countsAndLengthsPastTheFrameAreRejected() throws IOException {
+        // entry() leaves leaderId null: the entry count is at byte 26, the first command's length at 34
+        byte[] frame = encode(entry("PUT /a 1"));
+        byte[] count = frame.clone();
+        ByteBuffer.wrap(count).putInt(26, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> decode(count, RpcModels.AppendEntriesRequest.class));
+        byte[] negative = frame.clone();
+        ByteBuffer.wrap(negative).putInt(26, -1);
+        assertThrows(IOException.class, () -> decode(negative, RpcModels.AppendEntriesRequest.class));
+        byte[] length = frame.clone();
+        ByteBuffer.wrap(length).putInt(34, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> decode(length, RpcModels.AppendEntriesRequest.class));
+        // a frame whose own length ends inside the last field
+        byte[] shortened = Arrays.copyOf(frame, frame.length - 2);
+        ByteBuffer.wrap(shortened).putInt(0, frame.length - 6);
+        assertThrows(IOException.class, () -> decode(shortened, RpcModels.AppendEntriesRequest.class));
+    }
+
+    private static RpcModels.AppendEntriesRequest entry(String command) {
+        RpcModels.AppendEntriesRequest req = new RpcModels.AppendEntriesRequest();
+        req.entries = List.of(new LogEntry(1, command));
+        return req;
+    }
+
+    private static String utf8(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private byte[] encode(Object msg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(msg, out);
+        return out.toByteArray();
+    }
+
+    private <T> T decode(byte[] frame, Class<T> type) throws IOException {
+        return codec.decode(new ByteArrayInputStream(frame), type);
+    }
+
+    private <T> T roundTrip(Object msg, Class<T> type) throws IOException {
+        return decode(encode(msg), type);
+    }
+}
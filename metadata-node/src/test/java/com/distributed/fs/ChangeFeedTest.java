@@ -0,0 +1,147 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Watches parked on a ChangeFeed: woken by the apply thread only when a matching change is
+// applied, timed out with an empty answer that still moves nextIndex on, and told to resync
+// once the changes they ask for have been dropped or skipped by a snapshot.
+class ChangeFeedTest {
+
+    @Test
+    void watchReturnsAppliedChangesAtOnce() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        put(feed, 1, "/a", "1");
+        put(feed, 2, "/b", "2");
+        feed.advance(2);
+        ChangeFeed.Changes c = feed.watch(null, null, 1, 100, 1000).get(0, TimeUnit.SECONDS);
+        assertEquals(List.of("/a", "/b"), keys(c));
+        assertEquals(3, c.nextIndex);
+        assertFalse(c.resync);
+    }
+
+    @Test
+    void changesAreHiddenUntilAdvance() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        feed.advance(1);
+        CompletableFuture<ChangeFeed.Changes> watch = feed.watch("/a", null, 2, 100, 10_000);
+        put(feed, 2, "/a", "1");
+        assertFalse(watch.isDone(), "added but not yet applied");
+        feed.advance(2);
+        ChangeFeed.Changes c = watch.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("/a"), keys(c));
+        assertEquals("1", new String(c.changes.get(0).value, StandardCharsets.UTF_8));
+        assertEquals(3, c.nextIndex);
+    }
+
+    @Test
+    void nonMatchingChangesDoNotWakeAWatch() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        CompletableFuture<ChangeFeed.Changes> watch = feed.watch(null, "/dir/", 1, 100, 10_000);
+        put(feed, 1, "/other", "x");
+        put(feed, 2, "/dirty", "x");
+        feed.advance(2);
+        assertFalse(watch.isDone());
+        feed.add(3, "/dir/f", null); // a delete
+        feed.advance(3);
+        ChangeFeed.Changes c = watch.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("/dir/f"), keys(c));
+        assertNull(c.changes.get(0).value);
+        assertEquals(4, c.nextIndex);
+    }
+
+    @Test
+    void timeoutCompletesEmptyPastEverythingApplied() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        CompletableFuture<ChangeFeed.Changes> watch = feed.watch("/a", null, 1, 100, 50);
+        put(feed, 1, "/b", "x");
+        put(feed, 2, "/c", "x");
+        feed.advance(2);
+        ChangeFeed.Changes c = watch.get(5, TimeUnit.SECONDS);
+        assertTrue(c.changes.isEmpty());
+        assertFalse(c.resync);
+        assertEquals(3, c.nextIndex); // the next watch doesn't look at /b and /c again
+    }
+
+    @Test
+    void zeroTimeoutAnswersImmediately() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        feed.advance(5);
+        CompletableFuture<ChangeFeed.Changes> watch = feed.watch(null, null, 1, 100, 0);
+        assertTrue(watch.isDone());
+        assertTrue(watch.get().changes.isEmpty());
+        assertEquals(6, watch.get().nextIndex);
+    }
+
+    @Test
+    void limitNeverSplitsAnEntry() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        put(feed, 1, "/a", "1");
+        put(feed, 2, "/b", "2"); // a batch: three keys in one entry
+        put(feed, 2, "/c", "2");
+        put(feed, 2, "/d", "2");
+        put(feed, 3, "/e", "3");
+        feed.advance(3);
+        ChangeFeed.Changes first = feed.watch(null, null, 1, 2, 1000).get(0, TimeUnit.SECONDS);
+        assertEquals(List.of("/a", "/b", "/c", "/d"), keys(first));
+        assertEquals(3, first.nextIndex);
+        ChangeFeed.Changes rest = feed.watch(null, null, first.nextIndex, 2, 1000).get(0, TimeUnit.SECONDS);
+        assertEquals(List.of("/e"), keys(rest));
+        assertEquals(4, rest.nextIndex);
+    }
+
+    @Test
+    void droppedChangesAskForResync() throws Exception {
+        ChangeFeed feed = new ChangeFeed(3);
+        for (int i = 1; i <= 5; i++) put(feed, i, "/k" + i, "v");
+        feed.advance(5);
+        ChangeFeed.Changes c = feed.watch(null, null, 2, 100, 1000).get(0, TimeUnit.SECONDS);
+        assertTrue(c.resync);
+        assertTrue(c.changes.isEmpty());
+        assertEquals(6, c.nextIndex);
+        ChangeFeed.Changes kept = feed.watch(null, null, 3, 100, 1000).get(0, TimeUnit.SECONDS);
+        assertFalse(kept.resync);
+        assertEquals(List.of("/k3", "/k4", "/k5"), keys(kept));
+    }
+
+    @Test
+    void snapshotResetWakesWatchersWithResync() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        put(feed, 1, "/a", "1");
+        feed.advance(1);
+        CompletableFuture<ChangeFeed.Changes> watch = feed.watch("/a", null, 2, 100, 10_000);
+        feed.reset(40);
+        ChangeFeed.Changes c = watch.get(5, TimeUnit.SECONDS);
+        assertTrue(c.resync);
+        assertEquals(41, c.nextIndex);
+
+        put(feed, 41, "/a", "2");
+        feed.advance(41);
+        ChangeFeed.Changes after = feed.watch("/a", null, c.nextIndex, 100, 1000).get(0, TimeUnit.SECONDS);
+        assertFalse(after.resync);
+        assertEquals(List.of("/a"), keys(after));
+    }
+
+    @Test
+    void disabledFeedKeepsNothing() throws Exception {
+        ChangeFeed feed = new ChangeFeed(0);
+        assertFalse(feed.enabled());
+        put(feed, 1, "/a", "1");
+        feed.advance(1);
+        assertTrue(feed.watch(null, null, 1, 100, 0).get().changes.isEmpty());
+    }
+
+    private static void put(ChangeFeed feed, int index, String key, String value) {
+        feed.add(index, key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> keys(ChangeFeed.Changes c) {
+        return c.changes.stream().map(change -> change.key).toList();
+    }
+}
@@ -0,0 +1,107 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Learner -> voter -> removed, first on ClusterConfig itself, then through changeMembership on an
+// in-process cluster, where each step is a CONFIG entry that every member must pick up.
+class ClusterConfigTest {
+    @TempDir
+    Path dir;
+
+    private TestCluster cluster;
+
+    @AfterEach
+    void stopCluster() throws IOException {
+        if (cluster != null) cluster.close();
+    }
+
+    @Test
+    void learnerIsReplicatedToButNotCounted() {
+        ClusterConfig c = new ClusterConfig(List.of("n1", "n2", "n3"), List.of()).withLearner("n4");
+        assertTrue(c.isLearner("n4"));
+        assertFalse(c.isVoter("n4"));
+        assertTrue(c.contains("n4"));
+        assertEquals(2, c.majority());
+        assertEquals(List.of("n2", "n3", "n4"), c.othersThan("n1"));
+        assertEquals(List.of("n2", "n3"), c.votersOtherThan("n1"));
+    }
+
+    @Test
+    void promoteMovesALearnerToTheVoters() {
+        ClusterConfig c = new ClusterConfig(List.of("n1", "n2", "n3"), List.of("n4")).promote("n4");
+        assertTrue(c.isVoter("n4"));
+        assertFalse(c.isLearner("n4"));
+        assertEquals(List.of(), c.learners);
+        assertEquals(3, c.majority()); // 4 voters
+    }
+
+    @Test
+    void withoutRemovesVotersAndLearners() {
+        ClusterConfig c = new ClusterConfig(List.of("n1", "n2", "n3"), List.of("n4"));
+        ClusterConfig noLearner = c.without("n4");
+        assertFalse(noLearner.contains("n4"));
+        assertEquals(c.voters, noLearner.voters);
+        ClusterConfig noVoter = c.without("n2");
+        assertEquals(List.of("n1", "n3"), noVoter.voters);
+        assertEquals(List.of("n4"), noVoter.learners);
+        assertEquals(2, noVoter.majority());
+        assertTrue(c.isVoter("n2"), "configs are immutable");
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        for (ClusterConfig c : List.of(
+                new ClusterConfig(List.of("localhost:8001", "localhost:8002"), List.of("localhost:8003")),
+                new ClusterConfig(List.of("n1"), List.of()),
+                ClusterConfig.empty())) {
+            ClusterConfig back = ClusterConfig.decode(c.encode());
+            assertEquals(c.voters, back.voters);
+            assertEquals(c.learners, back.learners);
+            assertEquals(c.encode(), ClusterConfig.decode(c.encodeBytes()).encode());
+        }
+        assertEquals(List.of(), ClusterConfig.decode("n1,n2").learners); // no learner section at all
+    }
+
+    @Test
+    void changesCommitThroughTheLog() throws Exception {
+        cluster = new TestCluster(dir, 3);
+        cluster.startAll();
+        RaftNode leader = cluster.awaitLeader(0);
+        RaftNode joiner = cluster.join("node4");
+        String n4 = joiner.getNodeId();
+
+        assertEquals("OK", leader.changeMembership("add-learner", n4, 10000));
+        assertTrue(listed(leader, "learners", n4));
+        TestCluster.await(() -> listed(joiner, "learners", n4), "the learner knows it is one");
+        assertTrue(leader.changeMembership("add-learner", n4, 10000).startsWith("error"));
+        assertEquals("OK", leader.clientPut("/a", "1"));
+        TestCluster.await(() -> "1".equals(joiner.getMetadata("/a")), "the learner has the put");
+
+        assertEquals("OK", leader.changeMembership("promote", n4, 10000));
+        assertTrue(listed(leader, "voters", n4));
+        assertFalse(listed(leader, "learners", n4));
+        TestCluster.await(() -> listed(joiner, "voters", n4) && !listed(joiner, "learners", n4), "it knows it votes");
+        assertTrue(leader.changeMembership("promote", n4, 10000).startsWith("error"));
+
+        assertEquals("OK", leader.changeMembership("remove", n4, 10000));
+        assertFalse(listed(leader, "voters", n4));
+        assertFalse(listed(leader, "learners", n4));
+        assertTrue(leader.changeMembership("remove", n4, 10000).startsWith("error"));
+        assertTrue(leader.changeMembership("promote", "node5", 10000).startsWith("error"));
+    }
+
+    // membership() starts with the node's current config: "voters=[..] learners=[..]"
+    private static boolean listed(RaftNode node, String role, String id) {
+        String m = node.membership();
+        int from = m.indexOf(role + "=[");
+        return List.of(m.substring(from + role.length() + 2, m.indexOf(']', from)).split(", ")).contains(id);
+    }
+}
@@ -0,0 +1,109 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every op survives encode/decode unchanged, and encoded commands stay distinguishable from the
+// "PUT key value" text entries of older logs.
+class CommandTest {
+
+    @Test
+    void putRoundTrip() {
+        Command c = roundTrip(Command.put("/files/a", "{\"size\":12}"));
+        assertEquals(Command.PUT, c.op);
+        assertEquals("/files/a", c.keyString());
+        assertEquals("{\"size\":12}", utf8(c.value));
+    }
+
+    @Test
+    void deleteRoundTrip() {
+        Command c = roundTrip(Command.delete("/files/a"));
+        assertEquals(Command.DELETE, c.op);
+        assertEquals("/files/a", c.keyString());
+        assertNull(c.value);
+    }
+
+    @Test
+    void casRoundTripKeepsAbsentApartFromEmpty() {
+        Command absent = roundTrip(Command.cas("/lock", null, "owner-1"));
+        assertEquals(Command.CAS, absent.op);
+        assertNull(absent.expected);
+        assertEquals("owner-1", utf8(absent.value));
+
+        Command empty = roundTrip(Command.cas("/lock", "", "owner-2"));
+        assertNotNull(empty.expected);
+        assertEquals(0, empty.expected.length);
+    }
+
+    @Test
+    void binaryAndEmptyValuesRoundTrip() {
+        byte[] value = new byte[256];
+        for (int i = 0; i < value.length; i++) value[i] = (byte) i;
+        Command c = roundTrip(Command.put("/bin".getBytes(StandardCharsets.UTF_8), value));
+        assertArrayEquals(value, c.value);
+        assertEquals(0, roundTrip(Command.put("/empty", "")).value.length);
+        assertEquals("/ключ", roundTrip(Command.delete("/ключ")).keyString());
+    }
+
+    @Test
+    void batchRoundTripKeepsOrder() {
+        Command c = roundTrip(Command.batch(List.of(
+                Command.put("/a", "1"),
+                Command.cas("/b", null, "2"),
+                Command.delete("/c"))));
+        assertEquals(Command.BATCH, c.op);
+        assertEquals(3, c.ops.size());
+        assertEquals(Command.PUT, c.ops.get(0).op);
+        assertEquals("1", utf8(c.ops.get(0).value));
+        assertEquals(Command.CAS, c.ops.get(1).op);
+        assertNull(c.ops.get(1).expected);
+        assertEquals("/c", c.ops.get(2).keyString());
+    }
+
+    @Test
+    void batchRejectsNestedOps() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Command.batch(List.of(Command.batch(List.of(Command.put("/a", "1"))))));
+        assertThrows(IllegalArgumentException.class, () -> Command.batch(List.of(Command.noop())));
+    }
+
+    @Test
+    void configAndNoopRoundTrip() {
+        ClusterConfig config = new ClusterConfig(List.of("n1", "n2", "n3"), List.of("n4"));
+        byte[] encoded = Command.config(config).encode();
+        assertTrue(Command.isConfig(encoded));
+        Command c = Command.decode(encoded);
+        assertEquals(config.encode(), ClusterConfig.decode(c.value).encode());
+
+        byte[] noop = Command.noop().encode();
+        assertEquals(1, noop.length);
+        assertEquals(Command.NOOP, Command.decode(noop).op);
+        assertFalse(Command.isConfig(noop));
+    }
+
+    @Test
+    void encodedCommandsAreNotMistakenForText() {
+        assertTrue(Command.isEncoded(Command.put("/a", "1").encode()));
+        assertTrue(Command.isEncoded(Command.noop().encode()));
+        assertFalse(Command.isEncoded("PUT /a 1".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(Command.isEncoded("NOOP".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(Command.isEncoded(new byte[0]));
+    }
+
+    @Test
+    void unknownOpcodeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Command.decode(new byte[]{0x1f}));
+    }
+
+    private static Command roundTrip(Command c) {
+        return Command.decode(c.encode());
+    }
+
+    private static String utf8(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Elections around a partition. With pre-vote a node cut off from the cluster keeps asking
+// whether it could win and never bumps its term, so rejoining doesn't depose a healthy leader;
+// with check-quorum a leader that can't reach a majority steps down on its own.
+class ElectionTest {
+    private static final long PARTITION_MS = 1500; // three or more election timeouts
+
+    @TempDir
+    Path dir;
+
+    private TestCluster cluster;
+
+    @BeforeEach
+    void startCluster() throws Exception {
+        cluster = new TestCluster(dir, 3);
+        cluster.startAll();
+    }
+
+    @AfterEach
+    void stopCluster() throws IOException {
+        cluster.close();
+    }
+
+    @Test
+    void partitionedFollowerRejoinsWithoutBumpingTheTerm() throws Exception {
+        RaftNode leader = cluster.awaitLeader(0);
+        int term = leader.currentTerm();
+        RaftNode follower = cluster.follower();
+        cluster.isolate(follower.getNodeId());
+        Thread.sleep(PARTITION_MS);
+        assertEquals(term, follower.currentTerm(), "pre-votes went unanswered, so no new term");
+
+        cluster.heal(follower.getNodeId());
+        TestCluster.await(() -> follower.commitIndex() == leader.commitIndex(), "the follower has caught up");
+        assertTrue(leader.isLeader());
+        assertEquals(term, leader.currentTerm());
+    }
+
+    @Test
+    void leaderWithoutAQuorumStepsDown() throws Exception {
+        RaftNode leader = cluster.awaitLeader(0);
+        int term = leader.currentTerm();
+        cluster.isolate(leader.getNodeId());
+        TestCluster.await(() -> !leader.isLeader(), "the cut-off leader has stepped down");
+        assertEquals(term, leader.currentTerm(), "stepped down in its own term");
+
+        RaftNode next = cluster.awaitLeader(leader.commitIndex());
+        assertNotSame(leader, next);
+        assertTrue(next.currentTerm() > term);
+    }
+}
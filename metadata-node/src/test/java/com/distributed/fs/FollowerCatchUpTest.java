@@ -0,0 +1,73 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A follower thousands of entries behind a freshly elected leader (same setup as
+// FollowerCatchUpBenchmark). With conflict hints the leader finds where the logs part in a couple
+// of rejected AppendEntries whatever the gap; walking nextIndex back one entry per round trip
+// would take thousands.
+class FollowerCatchUpTest {
+    private static final int LAG = 2000;
+    private static final int MAX_REJECTIONS = 10; // pipelined requests already in flight get rejected too
+
+    @TempDir
+    Path dir;
+
+    private TestCluster cluster;
+
+    @BeforeEach
+    void createCluster() throws IOException {
+        cluster = new TestCluster(dir, 3);
+        cluster.options.snapshotThreshold = Integer.MAX_VALUE; // catch up from the log, not a snapshot
+    }
+
+    @AfterEach
+    void stopCluster() throws IOException {
+        cluster.close();
+    }
+
+    @Test
+    void emptyFollowerCatchesUpQuickly() throws Exception {
+        catchUp(List.of());
+    }
+
+    @Test
+    void divergentTailFromAnOlderTermIsFoundAndOverwritten() throws Exception {
+        List<LogEntry> stale = new ArrayList<>();
+        for (int i = 1; i <= LAG / 2; i++) stale.add(new LogEntry(1, "PUT /files/f" + i + " stale"));
+        RaftNode laggard = catchUp(stale);
+        assertEquals("v1", laggard.getMetadata("/files/f1"));
+        assertEquals("v" + LAG / 2, laggard.getMetadata("/files/f" + LAG / 2));
+    }
+
+    // the first two nodes agree on LAG entries from term 2; the third holds laggardLog and starts late
+    private RaftNode catchUp(List<LogEntry> laggardLog) throws Exception {
+        List<LogEntry> committed = new ArrayList<>(LAG);
+        for (int i = 1; i <= LAG; i++) committed.add(new LogEntry(2, "PUT /files/f" + i + " v" + i));
+        String laggardId = cluster.ids.get(2);
+        cluster.seed(cluster.ids.get(0), 2, committed);
+        cluster.seed(cluster.ids.get(1), 2, committed);
+        cluster.seed(laggardId, 1, laggardLog);
+        cluster.start(cluster.ids.get(0));
+        cluster.start(cluster.ids.get(1));
+        RaftNode leader = cluster.awaitLeader(LAG); // its no-op committed, so everything seeded is committed
+
+        long rejectionsBefore = leader.metrics().appendEntriesRejections.sum();
+        RaftNode laggard = cluster.start(laggardId);
+        TestCluster.await(() -> laggard.lastApplied() > LAG, "the follower has applied the leader's log");
+        long rejections = leader.metrics().appendEntriesRejections.sum() - rejectionsBefore;
+        assertTrue(rejections <= MAX_REJECTIONS, rejections + " AppendEntries rejected before the logs matched");
+        assertEquals("v" + LAG, laggard.getMetadata("/files/f" + LAG));
+        return laggard;
+    }
+}
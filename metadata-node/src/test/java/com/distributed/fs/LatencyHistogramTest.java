@@ -0,0 +1,116 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Bucket arithmetic of LatencyHistogram (every value lands in a bucket whose upper bound is within
+// 1/16 above it, buckets tile the whole range with no gaps) and the percentiles read from it.
+class LatencyHistogramTest {
+    private static final int SUB_BUCKETS = 16;
+
+    @Test
+    void smallValuesAreExact() {
+        for (long v = 0; v < SUB_BUCKETS; v++) {
+            assertEquals(v, LatencyHistogram.bucketOf(v));
+            assertEquals(v, LatencyHistogram.upperBound((int) v));
+        }
+        assertEquals(SUB_BUCKETS, LatencyHistogram.bucketOf(SUB_BUCKETS));
+    }
+
+    @Test
+    void bucketsTileTheRangeWithoutGaps() {
+        long upper = -1;
+        for (int b = 0; b <= LatencyHistogram.bucketOf(Long.MAX_VALUE); b++) {
+            long lower = upper + 1;
+            upper = LatencyHistogram.upperBound(b);
+            assertTrue(upper >= lower, "bucket " + b + " is empty");
+            assertEquals(b, LatencyHistogram.bucketOf(lower), "lower end of bucket " + b);
+            assertEquals(b, LatencyHistogram.bucketOf(upper), "upper end of bucket " + b);
+            if (b > 0 && upper != Long.MAX_VALUE) assertEquals(b + 1, LatencyHistogram.bucketOf(upper + 1));
+        }
+        assertEquals(Long.MAX_VALUE, upper);
+    }
+
+    @Test
+    void upperBoundIsWithinASixteenthOfTheValue() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) {
+            long v = random.nextLong(1L << random.nextInt(1, 63));
+            long reported = LatencyHistogram.upperBound(LatencyHistogram.bucketOf(v));
+            assertTrue(reported >= v, v + " reported as " + reported);
+            assertTrue(reported - v <= v / SUB_BUCKETS, v + " reported as " + reported);
+        }
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.quantile(0.5));
+        assertEquals(0, h.quantile(1.0));
+        assertEquals(0, h.count());
+        assertEquals(0, h.max());
+    }
+
+    @Test
+    void quantilesOfAUniformDistribution() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) h.record(v);
+        assertEquals(10_000, h.count());
+        assertEquals(10_000L * 10_001 / 2, h.sum());
+        assertEquals(10_000, h.max());
+        for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            long exact = (long) Math.ceil(q * 10_000);
+            long reported = h.quantile(q);
+            assertTrue(reported >= exact && reported - exact <= exact / SUB_BUCKETS, "p" + q + " = " + reported);
+        }
+        assertEquals(1, h.quantile(0.0)); // the smallest value, which has a bucket of its own
+        assertEquals(10_000, h.quantile(1.0)); // capped by max, not the bucket's upper bound
+    }
+
+    @Test
+    void quantileNeverExceedsTheMax() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(1_000_001); // bucket upper bound is 1_015_807
+        assertEquals(1_000_001, h.quantile(0.5));
+        assertEquals(1_000_001, h.quantile(1.0));
+    }
+
+    @Test
+    void aFewSlowValuesShowOnlyInTheTail() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) h.record(100);
+        for (int i = 0; i < 10; i++) h.record(50_000);
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucketOf(100)), h.quantile(0.5));
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucketOf(100)), h.quantile(0.99));
+        assertEquals(50_000, h.quantile(0.999));
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        assertEquals(1, h.count());
+        assertEquals(0, h.sum());
+        assertEquals(0, h.quantile(1.0));
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long value = 1000L * (t + 1);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) h.record(value);
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(40_000, h.count());
+        assertEquals(10_000L * (1000 + 2000 + 3000 + 4000), h.sum());
+        assertEquals(4000, h.max());
+    }
+}
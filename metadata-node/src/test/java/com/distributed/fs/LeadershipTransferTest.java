@@ -0,0 +1,85 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// transferLeadership hands the group to a caught-up follower through TimeoutNow, or gives up at
+// its deadline and leaves the old leader in charge, taking writes again. Leases are on: voters
+// elect a transfer target without waiting them out, so a leader whose handover may have reached
+// its target can't read from the lease it held before.
+class LeadershipTransferTest {
+    @TempDir
+    Path dir;
+
+    private TestCluster cluster;
+
+    @BeforeEach
+    void startCluster() throws Exception {
+        cluster = new TestCluster(dir, 3);
+        cluster.options.readLeaseMs = 250;
+        cluster.startAll();
+    }
+
+    @AfterEach
+    void stopCluster() throws IOException {
+        cluster.close();
+    }
+
+    @Test
+    void transferHandsLeadershipToTheTarget() throws Exception {
+        RaftNode leader = cluster.awaitLeader(0);
+        int term = leader.currentTerm();
+        assertEquals("OK", leader.clientPut("/a", "1"));
+        RaftNode target = cluster.follower();
+
+        assertEquals("OK:" + target.getNodeId(), leader.transferLeadership(target.getNodeId(), 2000));
+        assertFalse(leader.isLeader());
+        TestCluster.await(target::isLeader, "the target has taken over");
+        assertEquals(term + 1, target.currentTerm()); // one election, no pre-vote round
+        assertEquals("1", target.clientGet("/a"));
+        assertTrue(leader.clientPut("/b", "2").startsWith("NOT_LEADER:" + target.getNodeId()));
+    }
+
+    @Test
+    void transferToAnUnreachableTargetTimesOut() throws Exception {
+        RaftNode leader = cluster.awaitLeader(0);
+        int term = leader.currentTerm();
+        RaftNode target = cluster.follower();
+        cluster.isolate(target.getNodeId());
+        assertEquals("OK", leader.clientPut("/a", "1")); // committed without the target
+
+        String result = leader.transferLeadership(target.getNodeId(), 300);
+        assertTrue(result.startsWith("error: " + target.getNodeId() + " did not catch up"), result);
+        assertTrue(leader.isLeader());
+        assertEquals(term, leader.currentTerm());
+        assertEquals("OK", leader.clientPut("/b", "2")); // writes resume
+        assertEquals("2", leader.clientGet("/b"));
+    }
+
+    @Test
+    void leaderStopsReadingFromItsLeaseAfterAnUnansweredHandover() throws Exception {
+        RaftNode leader = cluster.awaitLeader(0);
+        assertEquals("OK", leader.clientPut("/a", "1"));
+        RaftNode target = cluster.follower();
+        TestCluster.await(() -> target.lastApplied() >= leader.lastApplied(), "the target has the whole log");
+        cluster.isolate(target.getNodeId()); // caught up, but TimeoutNow gets no answer
+
+        String result = leader.transferLeadership(target.getNodeId(), 300);
+        assertTrue(result.startsWith("error: " + target.getNodeId() + " did not accept"), result);
+        // the lease from acks before the handover would still cover this read; a quorum can't
+        cluster.isolate(leader.getNodeId());
+        assertNotEquals("1", leader.clientGet("/a"));
+
+        cluster.heal(leader.getNodeId());
+        cluster.heal(target.getNodeId());
+        RaftNode current = cluster.awaitLeader(0);
+        assertEquals("1", current.clientGet("/a"));
+    }
+}
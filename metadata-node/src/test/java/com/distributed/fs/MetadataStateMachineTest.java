@@ -0,0 +1,124 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Listing keys a page at a time: prefix and range bounds, and a cursor (lastKey passed back as
+// `after`) that walks every key exactly once however the pages fall, even with writes between
+// pages, and pages that never show half of a batch applied meanwhile.
+class MetadataStateMachineTest {
+
+    @Test
+    void prefixListsOnlyThatDirectoryInOrder() {
+        MetadataStateMachine sm = withKeys("/a", "/dir/b", "/dir/a", "/dir/sub/c", "/dirt", "/e");
+        MetadataStateMachine.ListPage page = sm.list("/dir/", null, null, null, 100);
+        assertEquals(List.of("/dir/a", "/dir/b", "/dir/sub/c"), keys(page));
+        assertNull(page.lastKey);
+        assertEquals("v", new String(page.entries.get(0).value, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void fromIsInclusiveAndToExclusive() {
+        MetadataStateMachine sm = withKeys("/a", "/b", "/c", "/d");
+        assertEquals(List.of("/b", "/c"), keys(sm.list(null, "/b", "/d", null, 100)));
+        assertEquals(List.of("/c", "/d"), keys(sm.list(null, "/bb", null, null, 100)));
+        assertEquals(List.of(), keys(sm.list(null, "/c", "/c", null, 100)));
+        assertEquals(List.of(), keys(sm.list("/x", null, null, null, 100)));
+        // a prefix and a range together: both bounds apply
+        assertEquals(List.of("/b"), keys(sm.list("/", "/b", "/c", null, 100)));
+    }
+
+    @Test
+    void cursorWalksEveryKeyOnceWhateverThePageSize() {
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < 25; i++) all.add(String.format("/files/f%02d", i));
+        MetadataStateMachine sm = withKeys(all.toArray(new String[0]));
+        for (int limit : new int[]{1, 4, 5, 24, 25, 26}) {
+            List<String> seen = new ArrayList<>();
+            String after = null;
+            int pages = 0;
+            do {
+                MetadataStateMachine.ListPage page = sm.list("/files/", null, null, after, limit);
+                seen.addAll(keys(page));
+                after = page.lastKey;
+                pages++;
+            } while (after != null);
+            assertEquals(all, seen, "limit " + limit);
+            assertEquals((all.size() + limit - 1) / limit, pages, "pages at limit " + limit);
+        }
+    }
+
+    @Test
+    void lastKeyOnlyWhenMoreKeysFollow() {
+        MetadataStateMachine sm = withKeys("/a", "/b", "/c");
+        MetadataStateMachine.ListPage full = sm.list(null, null, null, null, 3);
+        assertEquals(3, full.entries.size());
+        assertNull(full.lastKey); // exactly limit keys left: no empty page after them
+        MetadataStateMachine.ListPage first = sm.list(null, null, null, null, 2);
+        assertEquals("/b", first.lastKey);
+    }
+
+    @Test
+    void cursorSurvivesWritesBetweenPages() {
+        MetadataStateMachine sm = withKeys("/d/a", "/d/b", "/d/c", "/d/d");
+        MetadataStateMachine.ListPage first = sm.list("/d/", null, null, null, 2);
+        assertEquals(List.of("/d/a", "/d/b"), keys(first));
+        sm.apply(Command.delete("/d/b").encode()); // the cursor key itself goes away
+        sm.apply(Command.put("/d/a2", "new").encode()); // behind the cursor: not seen
+        sm.apply(Command.put("/d/bb", "new").encode()); // ahead of it: seen
+        MetadataStateMachine.ListPage rest = sm.list("/d/", null, null, first.lastKey, 10);
+        assertEquals(List.of("/d/bb", "/d/c", "/d/d"), keys(rest));
+    }
+
+    @Test
+    void afterBeforeTheRangeDoesNotWidenIt() {
+        MetadataStateMachine sm = withKeys("/a", "/b/1", "/b/2", "/c");
+        assertEquals(List.of("/b/1", "/b/2"), keys(sm.list("/b/", null, null, "/a", 10)));
+        assertEquals(List.of(), keys(sm.list("/b/", null, null, "/b/2", 10)));
+    }
+
+    @Test
+    void prefixEndingInTheHighestCharStillBounds() {
+        String top = "/" + Character.MAX_VALUE;
+        MetadataStateMachine sm = withKeys("/a", top, top + "x", top + Character.MAX_VALUE);
+        assertEquals(List.of(top, top + "x", top + Character.MAX_VALUE), keys(sm.list(top, null, null, null, 10)));
+    }
+
+    @Test
+    void pageNeverShowsHalfABatch() throws Exception {
+        MetadataStateMachine sm = withKeys("/pair/a", "/pair/b");
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                String v = "v" + i;
+                sm.apply(Command.batch(List.of(Command.put("/pair/a", v), Command.put("/pair/b", v))).encode());
+            }
+        });
+        writer.start();
+        try {
+            while (writer.isAlive()) {
+                List<MetadataStateMachine.ListEntry> page = sm.list("/pair/", null, null, null, 10).entries;
+                assertEquals(2, page.size());
+                assertArrayEquals(page.get(0).value, page.get(1).value, "a page split a batch");
+            }
+        } finally {
+            writer.join();
+        }
+    }
+
+    private static MetadataStateMachine withKeys(String... keys) {
+        MetadataStateMachine sm = new MetadataStateMachine();
+        for (String key : keys) sm.apply(Command.put(key, "v").encode());
+        return sm;
+    }
+
+    private static List<String> keys(MetadataStateMachine.ListPage page) {
+        List<String> out = new ArrayList<>();
+        for (MetadataStateMachine.ListEntry e : page.entries) out.add(e.key);
+        return out;
+    }
+}
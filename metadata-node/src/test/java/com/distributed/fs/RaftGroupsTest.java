@@ -0,0 +1,143 @@
+package com.distributed.fs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Three hosts with two Raft groups each, over HTTP. Each group is led from its home member, so
+// no host leads every group, yet the client reads that merge all groups (/client/list and
+// /client/batch/get) are answered linearizably by any host.
+class RaftGroupsTest {
+    private static final int GROUPS = 2;
+
+    @TempDir
+    Path dir;
+
+    private final List<RaftGroups> hosts = new ArrayList<>();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final Gson gson = new Gson();
+
+    @BeforeEach
+    void startHosts() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) ids.add("localhost:" + TestCluster.freePort());
+        for (String id : ids) {
+            RaftOptions options = new RaftOptions();
+            options.dataDir = dir.toString();
+            options.groups = GROUPS;
+            List<String> peers = new ArrayList<>(ids);
+            peers.remove(id);
+            RaftGroups host = new RaftGroups(id, peers, port(id), options);
+            host.start();
+            hosts.add(host);
+        }
+        Collections.sort(ids);
+        TestCluster.await(() -> leadersAtHome(ids), "every group is led by its home member");
+    }
+
+    @AfterEach
+    void stopHosts() throws IOException {
+        for (RaftGroups host : hosts) host.stop();
+    }
+
+    @Test
+    void anyHostListsEveryGroup() throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) keys.add(String.format("/dir/f%02d", i));
+        for (String key : keys) assertEquals("OK", leaderOf(key).clientPut(key, "v"));
+
+        for (RaftGroups host : hosts) {
+            List<String> listed = new ArrayList<>();
+            String cursor = null;
+            do {
+                String query = "prefix=/dir/&limit=7" + (cursor == null ? "" : "&cursor=" + cursor);
+                JsonObject page = gson.fromJson(get(host, "/client/list?" + query), JsonObject.class);
+                page.getAsJsonArray("entries").forEach(e -> listed.add(e.getAsJsonObject().get("key").getAsString()));
+                cursor = page.has("next_cursor") ? URLEncoder.encode(page.get("next_cursor").getAsString(), StandardCharsets.UTF_8) : null;
+            } while (cursor != null);
+            assertEquals(keys, listed, "listed on " + host.groups().get(0).getNodeId());
+        }
+    }
+
+    @Test
+    void anyHostBatchGetsKeysFromEveryGroup() throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) keys.add("/batch/k" + i);
+        for (String key : keys) assertEquals("OK", leaderOf(key).clientPut(key, "v-" + key));
+        List<String> asked = new ArrayList<>(keys);
+        asked.add(3, "/batch/missing");
+
+        for (RaftGroups host : hosts) {
+            JsonObject body = new JsonObject();
+            body.add("keys", gson.toJsonTree(asked));
+            JsonObject reply = gson.fromJson(post(host, "/client/batch/get", body.toString()), JsonObject.class);
+            List<String> got = new ArrayList<>();
+            reply.getAsJsonArray("entries").forEach(e -> {
+                JsonObject entry = e.getAsJsonObject();
+                String key = entry.get("key").getAsString();
+                got.add(key);
+                if (key.equals("/batch/missing")) assertFalse(entry.has("value"));
+                else assertEquals("v-" + key, entry.get("value").getAsString(), key);
+            });
+            assertEquals(asked, got, "batch read on " + host.groups().get(0).getNodeId());
+        }
+    }
+
+    // group g's home is the g-th member by id (RaftNode.homeForGroup), so each group has its own
+    private boolean leadersAtHome(List<String> sortedIds) {
+        for (int g = 0; g < GROUPS; g++) {
+            RaftNode leader = leader(g);
+            if (leader == null || !leader.getNodeId().equals(sortedIds.get(g % sortedIds.size()))) return false;
+        }
+        return true;
+    }
+
+    // the host's RaftNode that leads group g, with its no-op committed
+    private RaftNode leader(int g) {
+        for (RaftGroups host : hosts) {
+            RaftNode node = host.groups().get(g);
+            if (node.isLeader() && node.commitIndex() > 0) return node;
+        }
+        return null;
+    }
+
+    private RaftNode leaderOf(String key) {
+        return leader(RaftGroups.groupOf(key, GROUPS));
+    }
+
+    private String get(RaftGroups host, String pathAndQuery) throws Exception {
+        URI uri = URI.create("http://" + host.groups().get(0).getNodeId() + pathAndQuery);
+        HttpResponse<String> resp = http.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, resp.statusCode());
+        return resp.body();
+    }
+
+    private String post(RaftGroups host, String path, String json) throws Exception {
+        URI uri = URI.create("http://" + host.groups().get(0).getNodeId() + path);
+        HttpRequest req = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(json)).build();
+        HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, resp.statusCode());
+        return resp.body();
+    }
+
+    private static int port(String id) {
+        return Integer.parseInt(id.substring(id.lastIndexOf(':') + 1));
+    }
+}
@@ -0,0 +1,149 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Raft RPC bodies over real HTTP against one node: RaftClient deflates large bodies once the
+// node has said it accepts that, and the node refuses bodies over --rpc-max-request-bytes
+// (counted after inflating) or in an encoding it doesn't know.
+class RaftHttpServerTest {
+    private static final int MAX_REQUEST_BYTES = 256 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private final RaftCodec codec = new BinaryRaftCodec();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private RaftNode node;
+
+    @BeforeEach
+    void startNode() throws Exception {
+        RaftOptions options = new RaftOptions();
+        options.dataDir = dir.toString();
+        options.rpcMaxRequestBytes = MAX_REQUEST_BYTES;
+        options.replicationMaxBatchBytes = MAX_REQUEST_BYTES / 4; // must fit in half of it, as JSON too
+        options.snapshotChunkBytes = MAX_REQUEST_BYTES / 4;
+        int port = TestCluster.freePort();
+        node = new RaftNode("localhost:" + port, List.of(), port, options);
+        node.start();
+    }
+
+    @AfterEach
+    void stopNode() throws IOException {
+        node.stop();
+    }
+
+    @Test
+    void largeBodiesAreDeflatedOnceThePeerAcceptsIt() {
+        RaftClient client = new RaftClient(new RaftOptions());
+        RpcModels.AppendEntriesRequest big = appendEntries(64 * 1024);
+        assertNotNull(client.appendEntries(node.getNodeId(), 0, big));
+        assertEquals(client.bodyBytes(), client.wireBytes()); // it hadn't said so yet
+
+        long body = client.bodyBytes();
+        long wire = client.wireBytes();
+        assertNotNull(client.appendEntries(node.getNodeId(), 0, big));
+        long sentBody = client.bodyBytes() - body;
+        long sentWire = client.wireBytes() - wire;
+        assertTrue(sentWire * 10 < sentBody, sentBody + " bytes went out as " + sentWire);
+
+        body = client.bodyBytes();
+        wire = client.wireBytes();
+        assertNotNull(client.appendEntries(node.getNodeId(), 0, appendEntries(100)));
+        assertEquals(client.bodyBytes() - body, client.wireBytes() - wire); // too small to bother
+    }
+
+    @Test
+    void bodyOverTheLimitGets413() throws Exception {
+        byte[] over = encode(appendEntries(MAX_REQUEST_BYTES + 1));
+        assertEquals(413, post(over, null));
+        byte[] deflated = deflate(over);
+        assertTrue(deflated.length < MAX_REQUEST_BYTES);
+        assertEquals(413, post(deflated, "deflate")); // the limit applies after inflating
+        assertEquals(200, post(encode(appendEntries(100)), null));
+        assertEquals(200, post(deflate(encode(appendEntries(MAX_REQUEST_BYTES / 2))), "deflate"));
+    }
+
+    @Test
+    void frameAnnouncingMoreThanTheLimitGets413() throws Exception {
+        byte[] header = ByteBuffer.allocate(6).putInt(Integer.MAX_VALUE).put(BinaryRaftCodec.VERSION).put((byte) 3).array();
+        assertEquals(413, post(header, null));
+    }
+
+    @Test
+    void bodyGoingOnPastTheLimitIsAnsweredWithoutReadingTheRest() throws Exception {
+        String[] hostPort = node.getNodeId().split(":");
+        try (Socket socket = new Socket(hostPort[0], Integer.parseInt(hostPort[1]))) {
+            socket.setSoTimeout(5000); // reading the announced gigabyte would take us past this
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /appendEntries HTTP/1.1\r\nHost: " + node.getNodeId() + "\r\nContent-Type: "
+                    + codec.contentType() + "\r\nContent-Length: " + (1L << 30) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(ByteBuffer.allocate(6).putInt(Integer.MAX_VALUE).put(BinaryRaftCodec.VERSION).put((byte) 3).array());
+            out.write(new byte[MAX_REQUEST_BYTES / 4]);
+            out.flush();
+            String reply = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(reply.startsWith("HTTP/1.1 413"), reply);
+            assertTrue(reply.toLowerCase().contains("connection: close"), reply);
+        }
+    }
+
+    @Test
+    void malformedFrameGets400() throws Exception {
+        byte[] frame = encode(appendEntries(100));
+        ByteBuffer.wrap(frame).putInt(26, Integer.MAX_VALUE); // the entry count, with no leaderId
+        assertEquals(400, post(frame, null));
+        assertEquals(200, post(encode(appendEntries(100)), null));
+    }
+
+    @Test
+    void unknownEncodingGets415() throws Exception {
+        assertEquals(415, post(encode(appendEntries(100)), "gzip"));
+    }
+
+    // a stale-term AppendEntries: decoded in full, then refused without touching the log
+    private static RpcModels.AppendEntriesRequest appendEntries(int commandBytes) {
+        RpcModels.AppendEntriesRequest req = new RpcModels.AppendEntriesRequest();
+        req.entries = List.of(new LogEntry(0, Command.put("/big", "x".repeat(commandBytes)).encode()));
+        return req;
+    }
+
+    private byte[] encode(Object msg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(msg, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private int post(byte[] body, String encoding) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://" + node.getNodeId() + "/appendEntries"))
+                .header("Content-Type", codec.contentType());
+        if (encoding != null) request.header("Content-Encoding", encoding);
+        request.POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        return http.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,163 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// RaftLog's chunk arithmetic: index -> (chunk, slot) around CHUNK_ENTRIES boundaries, and
+// truncation and compaction that end exactly on, just before and just after one.
+class RaftLogTest {
+    private static final int C = RaftLog.CHUNK_ENTRIES;
+
+    @Test
+    void getAndTermAtAcrossChunkBoundaries() {
+        RaftLog log = filled(2 * C + 10);
+        assertEquals(2 * C + 10, log.lastIndex());
+        for (int index : new int[]{1, C - 1, C, C + 1, 2 * C, 2 * C + 1, 2 * C + 10}) {
+            assertEntry(log, index);
+            assertEquals(termOf(index), log.termAt(index));
+            assertEquals(payload(index).length, log.commandSize(index));
+        }
+        assertEquals(-1, log.termAt(2 * C + 11));
+        assertEquals(0, log.termAt(0)); // the empty snapshot before index 1
+        List<LogEntry> slice = log.slice(C - 1, C + 2);
+        assertEquals(3, slice.size());
+        assertEquals(new String(payload(C + 1), StandardCharsets.UTF_8), new String(slice.get(2).command, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void payloadsBiggerThanAChunkBufferGrowIt() {
+        RaftLog log = new RaftLog();
+        byte[] big = new byte[200 * 1024];
+        big[big.length - 1] = 7;
+        log.append(new LogEntry(1, "small"));
+        log.append(new LogEntry(1, big));
+        log.append(new LogEntry(1, "after"));
+        assertArrayEquals(big, log.get(2).command);
+        assertEquals("small", new String(log.get(1).command, StandardCharsets.UTF_8));
+        assertEquals("after", new String(log.get(3).command, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void truncateExactlyAtAChunkBoundary() {
+        RaftLog log = filled(2 * C + 10);
+        log.truncateFrom(C + 1); // index C is the last slot of the first chunk
+        assertEquals(C, log.lastIndex());
+        assertEntry(log, C);
+        log.append(new LogEntry(99, "new"));
+        assertEquals(99, log.termAt(C + 1));
+        assertEquals("new", new String(log.get(C + 1).command, StandardCharsets.UTF_8));
+        assertEntry(log, C);
+    }
+
+    @Test
+    void truncateOneSlotEitherSideOfABoundary() {
+        RaftLog log = filled(2 * C);
+        log.truncateFrom(C); // keeps C - 1 entries, the first chunk partly full
+        assertEquals(C - 1, log.lastIndex());
+        log.append(new LogEntry(99, "x"));
+        log.append(new LogEntry(99, "y")); // first slot of the second chunk again
+        assertEquals("x", new String(log.get(C).command, StandardCharsets.UTF_8));
+        assertEquals("y", new String(log.get(C + 1).command, StandardCharsets.UTF_8));
+        assertEntry(log, C - 1);
+
+        log.truncateFrom(C + 2); // past the end: nothing happens
+        assertEquals(C + 1, log.lastIndex());
+        log.truncateFrom(C + 1);
+        assertEquals(C, log.lastIndex());
+        assertEquals(-1, log.termAt(C + 1));
+    }
+
+    @Test
+    void truncateEverythingThenAppend() {
+        RaftLog log = filled(C + 1);
+        log.truncateFrom(1);
+        assertEquals(0, log.lastIndex());
+        log.append(new LogEntry(5, "first"));
+        assertEquals(5, log.termAt(1));
+        assertEquals("first", new String(log.get(1).command, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void compactDropsOnlyWholeChunks() {
+        RaftLog log = filled(3 * C);
+        log.compactTo(C + 5, termOf(C + 5));
+        assertEquals(C + 6, log.firstIndex());
+        assertEquals(termOf(C + 5), log.termAt(C + 5));
+        assertEquals(-1, log.termAt(C + 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> log.get(C + 5));
+        for (int index : new int[]{C + 6, 2 * C, 2 * C + 1, 3 * C}) assertEntry(log, index);
+
+        log.compactTo(2 * C, termOf(2 * C)); // exactly at a boundary
+        assertEquals(2 * C + 1, log.firstIndex());
+        assertEntry(log, 2 * C + 1);
+        assertEntry(log, 3 * C);
+        log.append(new LogEntry(termOf(3 * C), "tail"));
+        assertEquals("tail", new String(log.get(3 * C + 1).command, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void truncateRightAfterACompactedPrefix() {
+        RaftLog log = filled(2 * C);
+        log.compactTo(C - 1, termOf(C - 1));
+        log.truncateFrom(C); // the first entry left
+        assertEquals(C - 1, log.lastIndex());
+        log.append(new LogEntry(50, "again"));
+        assertEquals(50, log.termAt(C));
+        assertEquals(termOf(C - 1), log.termAt(C - 1));
+    }
+
+    @Test
+    void compactPastTheEndResets() {
+        RaftLog log = filled(10);
+        log.compactTo(20, 3);
+        assertEquals(20, log.lastIndex());
+        assertEquals(21, log.firstIndex());
+        assertEquals(3, log.lastTerm());
+        log.append(new LogEntry(4, "after snapshot"));
+        assertEquals(4, log.termAt(21));
+    }
+
+    @Test
+    void termSearchesAcrossChunks() {
+        RaftLog log = filled(3 * C);
+        // terms change every C / 2 entries (termOf), so runs straddle chunk boundaries
+        int index = C + 10;
+        int term = termOf(index);
+        int first = log.firstIndexOfTerm(index);
+        assertEquals(term, log.termAt(first));
+        assertEquals(term - 1, log.termAt(first - 1));
+        int last = log.lastIndexOfTerm(term);
+        assertEquals(term, log.termAt(last));
+        assertEquals(term + 1, log.termAt(last + 1));
+        assertEquals(0, log.lastIndexOfTerm(1000));
+
+        log.compactTo(first + 3, term);
+        assertEquals(first + 4, log.firstIndexOfTerm(index)); // doesn't look into the snapshot
+        assertEquals(last, log.lastIndexOfTerm(term));
+    }
+
+    private static RaftLog filled(int entries) {
+        RaftLog log = new RaftLog();
+        for (int i = 1; i <= entries; i++) log.append(new LogEntry(termOf(i), payload(i)));
+        return log;
+    }
+
+    private static int termOf(int index) {
+        return 1 + index / (C / 2);
+    }
+
+    // sizes vary so payload offsets inside a chunk are not all the same stride
+    private static byte[] payload(int index) {
+        return ("PUT /k" + index + " " + "v".repeat(index % 13)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void assertEntry(RaftLog log, int index) {
+        LogEntry e = log.get(index);
+        assertEquals(termOf(index), e.term);
+        assertArrayEquals(payload(index), e.command, "payload of entry " + index);
+    }
+}
@@ -0,0 +1,82 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A follower that falls behind past the leader's snapshot can only catch up through
+// InstallSnapshot, streamed in many small chunks here. What it installed is its own from then on:
+// it comes back from a restart with the data and the log after it. A snapshot file is never
+// replaced by an older one.
+class SnapshotTest {
+    private static final int KEYS = 300;
+
+    @TempDir
+    Path dir;
+
+    private TestCluster cluster;
+
+    @BeforeEach
+    void startCluster() throws Exception {
+        cluster = new TestCluster(dir, 3);
+        cluster.options.snapshotThreshold = 50;
+        cluster.options.snapshotChunkBytes = 256; // a few dozen chunks for KEYS keys
+        cluster.startAll();
+    }
+
+    @AfterEach
+    void stopCluster() throws IOException {
+        cluster.close();
+    }
+
+    @Test
+    void laggingFollowerInstallsTheSnapshotAndKeepsItAcrossARestart() throws Exception {
+        RaftNode leader = cluster.awaitLeader(0);
+        RaftNode laggard = cluster.follower();
+        String laggardId = laggard.getNodeId();
+        cluster.isolate(laggardId);
+        for (int i = 0; i < KEYS; i++) assertEquals("OK", leader.clientPut("/snap/k" + i, "v" + i));
+        TestCluster.await(() -> leader.snapshotIndex() > laggard.lastLogIndex(),
+                "the leader has compacted away what the follower is missing");
+
+        cluster.heal(laggardId);
+        int target = leader.lastApplied();
+        TestCluster.await(() -> laggard.lastApplied() >= target, "the follower has caught up");
+        assertTrue(laggard.snapshotIndex() > 0);
+        assertEquals("v0", laggard.getMetadata("/snap/k0"));
+        assertEquals("v" + (KEYS - 1), laggard.getMetadata("/snap/k" + (KEYS - 1)));
+
+        cluster.stop(laggard);
+        assertEquals("OK", leader.clientPut("/snap/after", "restart"));
+        RaftNode restarted = cluster.start(laggardId);
+        int snapshotIndex = restarted.snapshotIndex();
+        assertTrue(snapshotIndex > 0, "recovered from the installed snapshot");
+        TestCluster.await(() -> "restart".equals(restarted.getMetadata("/snap/after")),
+                "the restarted follower has the entries after it");
+        assertEquals("v" + (KEYS - 1), restarted.getMetadata("/snap/k" + (KEYS - 1)));
+    }
+
+    @Test
+    void olderSnapshotNeverReplacesANewerOne() throws IOException {
+        SnapshotStore store = new SnapshotStore(dir.resolve("store"));
+        String config = new ClusterConfig(List.of("node1"), List.of()).encode();
+        assertTrue(store.save(100, 3, config, bytes("new")));
+        assertFalse(store.save(60, 2, config, bytes("old")));
+        assertFalse(store.save(100, 3, config, bytes("same")));
+        SnapshotStore.Snapshot onDisk = new SnapshotStore(dir.resolve("store")).load();
+        assertEquals(100, onDisk.lastIncludedIndex);
+        assertEquals("new", new String(onDisk.data, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
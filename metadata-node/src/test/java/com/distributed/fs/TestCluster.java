@@ -0,0 +1,167 @@
+package com.distributed.fs;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A Raft cluster inside the test JVM, on an InMemoryRaftTransport. Every node keeps its WAL and
+// snapshots under dir, so a node can be stopped and started again as a restart, or given a log
+// before it starts (seed). isolate() cuts a node off from its peers as a network partition
+// would, while the test can still call it. Tests close() it from @AfterEach.
+class TestCluster implements AutoCloseable {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    final RaftOptions options = new RaftOptions();
+    final List<String> ids = new ArrayList<>();
+    private final InMemoryRaftTransport transport = new InMemoryRaftTransport();
+    private final List<RaftNode> running = new ArrayList<>();
+    private final Set<String> isolated = ConcurrentHashMap.newKeySet();
+
+    TestCluster(Path dir, int size) {
+        options.dataDir = dir.toString();
+        for (int i = 1; i <= size; i++) ids.add("node" + i);
+    }
+
+    // a new RaftNode for id, on a fresh WAL or whatever an earlier run of it left behind
+    RaftNode start(String id) throws IOException {
+        List<String> peers = new ArrayList<>(ids);
+        peers.remove(id);
+        return start(id, peers, options);
+    }
+
+    // a new host outside the configuration (--join=true), waiting to be added as a learner; it
+    // runs with default options
+    RaftNode join(String id) throws IOException {
+        RaftOptions o = new RaftOptions();
+        o.dataDir = options.dataDir;
+        o.join = true;
+        return start(id, List.of(), o);
+    }
+
+    private RaftNode start(String id, List<String> peers, RaftOptions o) throws IOException {
+        RaftNode node = new RaftNode(id, peers, 0, 0, new Link(id), o);
+        transport.register(node);
+        node.startGroup();
+        running.add(node);
+        return node;
+    }
+
+    void startAll() throws IOException {
+        for (String id : ids) start(id);
+    }
+
+    void stop(RaftNode node) throws IOException {
+        transport.disconnect(node.getNodeId());
+        running.remove(node);
+        node.stop();
+    }
+
+    void isolate(String id) {
+        isolated.add(id);
+    }
+
+    void heal(String id) {
+        isolated.remove(id);
+    }
+
+    // writes a log (and the term it was written in) straight into id's WAL before it starts
+    void seed(String id, int term, List<LogEntry> entries) throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(Path.of(options.dataDir, id), options.walSegmentBytes, false)) {
+            wal.load();
+            wal.saveHardState(term, null);
+            if (!entries.isEmpty()) wal.sync(wal.append(entries, 1));
+        }
+    }
+
+    // a running leader that has committed past minCommit (its no-op, at least)
+    RaftNode awaitLeader(int minCommit) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (System.nanoTime() < deadline) {
+            for (RaftNode node : running) {
+                if (node.isLeader() && node.commitIndex() > minCommit) return node;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("no leader elected");
+    }
+
+    // a running node that isn't leading
+    RaftNode follower() {
+        for (RaftNode node : running) {
+            if (!node.isLeader()) return node;
+        }
+        throw new AssertionError("every running node is a leader");
+    }
+
+    static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting until " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    // for tests that run nodes over HTTP instead
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RaftNode node : new ArrayList<>(running)) stop(node);
+    }
+
+    // one node's view of the transport: RPCs to or from an isolated node fail as an unreachable
+    // peer's do
+    private final class Link implements RaftTransport {
+        private final String from;
+
+        Link(String from) {
+            this.from = from;
+        }
+
+        private boolean cut(String peer) {
+            return isolated.contains(from) || isolated.contains(peer);
+        }
+
+        @Override
+        public RpcModels.RequestVoteResponse requestVote(String peer, int group, RpcModels.RequestVoteRequest req) {
+            return cut(peer) ? null : transport.requestVote(peer, group, req);
+        }
+
+        @Override
+        public RpcModels.AppendEntriesResponse appendEntries(String peer, int group, RpcModels.AppendEntriesRequest req) {
+            return cut(peer) ? null : transport.appendEntries(peer, group, req);
+        }
+
+        @Override
+        public RpcModels.InstallSnapshotResponse installSnapshot(String peer, int group, RpcModels.InstallSnapshotRequest req) {
+            return cut(peer) ? null : transport.installSnapshot(peer, group, req);
+        }
+
+        @Override
+        public RpcModels.TimeoutNowResponse timeoutNow(String peer, int group, RpcModels.TimeoutNowRequest req) {
+            return cut(peer) ? null : transport.timeoutNow(peer, group, req);
+        }
+
+        @Override
+        public RpcModels.ReadIndexResponse readIndex(String peer, int group, RpcModels.ReadIndexRequest req) {
+            return cut(peer) ? null : transport.readIndex(peer, group, req);
+        }
+
+        @Override
+        public RpcModels.HeartbeatResponse heartbeat(String peer, RpcModels.HeartbeatRequest req) {
+            return cut(peer) ? null : transport.heartbeat(peer, req);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.distributed.fs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Recovery and log surgery of WriteAheadLog. A tiny segment size makes every append after the
+// first few roll a new segment, so the segment boundaries are where the tests need them.
+class WriteAheadLogTest {
+    private static final long SMALL_SEGMENT = 64; // about two 20-byte records
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reloadsWhatWasAppendedAcrossSegments() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            appendOneByOne(wal, 1, 10, 1);
+        }
+        assertTrue(segments().size() > 3, "expected several segments, got " + segments());
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false)) {
+            List<LogEntry> loaded = wal.load();
+            assertEntries(loaded, 1, 10, 1);
+            assertEquals(1, wal.firstIndex());
+            assertEquals(10, wal.lastIndex());
+        }
+    }
+
+    @Test
+    void tornRecordAtTheTailIsCutOffOnRecovery() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            appendOneByOne(wal, 1, 5, 1);
+        }
+        Path tail = segments().get(segments().size() - 1);
+        long intact = Files.size(tail);
+        // a record header promising 100 bytes of payload, of which only 3 made it to disk
+        ByteBuffer torn = ByteBuffer.allocate(19).putInt(100).putInt(0).putInt(1).putInt(6).put(new byte[3]);
+        torn.flip();
+        try (FileChannel ch = FileChannel.open(tail, StandardOpenOption.APPEND)) {
+            ch.write(torn);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false)) {
+            assertEntries(wal.load(), 1, 5, 1);
+            assertEquals(intact, Files.size(tail));
+            wal.append(List.of(entry(2, 6)), 6); // appends continue right after the last good record
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false)) {
+            List<LogEntry> loaded = wal.load();
+            assertEquals(6, loaded.size());
+            assertEquals(2, loaded.get(5).term);
+        }
+    }
+
+    @Test
+    void recordWithBadChecksumAtTheTailIsCutOff() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 1 << 20, false)) {
+            wal.load();
+            wal.append(List.of(entry(1, 1), entry(1, 2), entry(1, 3)), 1);
+        }
+        Path tail = segments().get(0);
+        try (FileChannel ch = FileChannel.open(tail, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{(byte) 0xff}), Files.size(tail) - 1); // last payload byte
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 1 << 20, false)) {
+            assertEntries(wal.load(), 1, 2, 1);
+            assertEquals(2, wal.lastIndex());
+        }
+    }
+
+    @Test
+    void truncateAcrossASegmentBoundary() throws IOException {
+        List<Path> before;
+        try (WriteAheadLog wal = open()) {
+            appendOneByOne(wal, 1, 10, 1);
+            before = segments();
+            wal.truncateFrom(4); // inside an early segment: every later segment goes
+            assertEquals(3, wal.lastIndex());
+            assertTrue(segments().size() < before.size());
+            appendOneByOne(wal, 4, 6, 2); // the leader's entries replace ours
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false)) {
+            List<LogEntry> loaded = wal.load();
+            assertEntries(loaded.subList(0, 3), 1, 3, 1);
+            assertEntries(loaded.subList(3, 6), 4, 6, 2);
+            assertEquals(6, wal.lastIndex());
+        }
+    }
+
+    @Test
+    void truncateAtTheFirstIndexOfASegment() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            appendOneByOne(wal, 1, 10, 1);
+            int segmentStart = firstIndexOf(segments().get(2));
+            wal.truncateFrom(segmentStart);
+            assertEquals(segmentStart - 1, wal.lastIndex());
+            wal.append(List.of(entry(3, segmentStart)), segmentStart);
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false)) {
+            List<LogEntry> loaded = wal.load();
+            assertEquals(firstIndexOf(segments().get(2)), loaded.size());
+            assertEquals(3, loaded.get(loaded.size() - 1).term);
+        }
+    }
+
+    @Test
+    void compactThenReload() throws IOException {
+        int first;
+        try (WriteAheadLog wal = open()) {
+            appendOneByOne(wal, 1, 10, 1);
+            wal.compactTo(6);
+            first = wal.firstIndex();
+            // only whole segments at or below the snapshot go, so a few compacted entries may remain
+            assertTrue(first > 1 && first <= 7, "first index after compacting to 6: " + first);
+            assertEquals(10, wal.lastIndex());
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false)) {
+            List<LogEntry> loaded = wal.load();
+            assertEquals(first, wal.firstIndex());
+            assertEquals(10, wal.lastIndex());
+            assertEntries(loaded, first, 10, 1);
+            wal.append(List.of(entry(1, 11)), 11);
+            assertEquals(11, wal.lastIndex());
+        }
+    }
+
+    @Test
+    void resetStartsAnEmptyLogAtTheGivenIndex() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            appendOneByOne(wal, 1, 10, 1);
+            wal.reset(50); // a snapshot at 49 that our log doesn't line up with
+            assertEquals(49, wal.lastIndex());
+            assertEquals(50, wal.firstIndex());
+            wal.append(List.of(entry(4, 50)), 50);
+        }
+        assertEquals(1, segments().size());
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false)) {
+            List<LogEntry> loaded = wal.load();
+            assertEquals(1, loaded.size());
+            assertEquals(50, wal.firstIndex());
+            assertEquals(50, wal.lastIndex());
+            assertEquals(4, loaded.get(0).term);
+        }
+    }
+
+    @Test
+    void hardStateSurvivesReopen() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            assertEquals(0, wal.loadHardState().term);
+            assertNull(wal.loadHardState().votedFor);
+            wal.saveHardState(7, "localhost:8002");
+        }
+        try (WriteAheadLog wal = open()) {
+            WriteAheadLog.HardState hs = wal.loadHardState();
+            assertEquals(7, hs.term);
+            assertEquals("localhost:8002", hs.votedFor);
+        }
+    }
+
+    @Test
+    void groupCommitSyncCoversEarlierAppends() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 1 << 20, true)) {
+            wal.load();
+            long first = wal.append(List.of(entry(1, 1)), 1);
+            long second = wal.append(List.of(entry(1, 2)), 2);
+            wal.sync(second);
+            wal.sync(first); // already durable: returns without forcing again
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 1 << 20, true)) {
+            assertEntries(wal.load(), 1, 2, 1);
+        }
+    }
+
+    private WriteAheadLog open() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir, SMALL_SEGMENT, false);
+        wal.load();
+        return wal;
+    }
+
+    // one append per entry, since a segment only rolls between appends
+    private static void appendOneByOne(WriteAheadLog wal, int from, int to, int term) throws IOException {
+        for (int i = from; i <= to; i++) wal.append(List.of(entry(term, i)), i);
+    }
+
+    private static LogEntry entry(int term, int index) {
+        return new LogEntry(term, "PUT /k" + index + " v");
+    }
+
+    private static void assertEntries(List<LogEntry> entries, int from, int to, int term) {
+        assertEquals(to - from + 1, entries.size());
+        for (int i = from; i <= to; i++) {
+            LogEntry e = entries.get(i - from);
+            assertEquals(term, e.term);
+            assertEquals("PUT /k" + i + " v", new String(e.command, StandardCharsets.UTF_8));
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> out = new ArrayList<>();
+            files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().forEach(out::add);
+            return out;
+        }
+    }
+
+    private static int firstIndexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring("wal-".length(), name.length() - ".log".length()));
+    }
+}